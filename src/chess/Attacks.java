@@ -0,0 +1,181 @@
+package chess;
+
+class Attacks {
+	private static final long[] KNIGHT = new long[64];
+	private static final long[] KING = new long[64];
+	private static final long[][] PAWN = new long[2][64];
+	private static final long[][] BETWEEN = new long[64][64];
+
+	private static final long[] ROOK_MASKS = new long[64];
+	private static final long[] ROOK_MAGICS = new long[64];
+	private static final int[] ROOK_SHIFTS = new int[64];
+	private static final long[][] ROOK_TABLE = new long[64][];
+
+	private static final long[] BISHOP_MASKS = new long[64];
+	private static final long[] BISHOP_MAGICS = new long[64];
+	private static final int[] BISHOP_SHIFTS = new int[64];
+	private static final long[][] BISHOP_TABLE = new long[64][];
+
+	private static final int[] ROOK_X = { 1, -1, 0, 0 };
+	private static final int[] ROOK_Y = { 0, 0, 1, -1 };
+	private static final int[] BISHOP_X = { 1, 1, -1, -1 };
+	private static final int[] BISHOP_Y = { 1, -1, 1, -1 };
+
+	// per-rank seeds that keep the magic search short
+	private static final long[] SEEDS = { 728, 2985, 110, 2501, 1289, 2821,
+			1699, 255 };
+	private static long seed;
+
+	static {
+		int[] knightX = { -2, -1, -2, -1, 2, 1, 2, 1 };
+		int[] knightY = { -1, -2, 1, 2, -1, -2, 1, 2 };
+		int[] kingX = { -1, -1, 0, 1, 1, 1, 0, -1 };
+		int[] kingY = { 0, 1, 1, 1, 0, -1, -1, -1 };
+		for (int square = 0; square < 64; square++) {
+			int x = Board.file(square);
+			int y = Board.rank(square);
+			for (int i = 0; i < 8; i++) {
+				KNIGHT[square] |= bit(x + knightX[i], y + knightY[i]);
+				KING[square] |= bit(x + kingX[i], y + kingY[i]);
+			}
+			PAWN[Board.WHITE][square] = bit(x - 1, y + 1) | bit(x + 1, y + 1);
+			PAWN[Board.BLACK][square] = bit(x - 1, y - 1) | bit(x + 1, y - 1);
+			for (int i = 0; i < 8; i++) {
+				// walk every ray, remembering the squares passed over
+				int dx = i < 4 ? ROOK_X[i] : BISHOP_X[i - 4];
+				int dy = i < 4 ? ROOK_Y[i] : BISHOP_Y[i - 4];
+				long path = 0;
+				int testX = x + dx;
+				int testY = y + dy;
+				while (bit(testX, testY) != 0) {
+					BETWEEN[square][Board.square(testX, testY)] = path;
+					path |= bit(testX, testY);
+					testX += dx;
+					testY += dy;
+				}
+			}
+			initMagic(square, ROOK_X, ROOK_Y, ROOK_MASKS, ROOK_MAGICS,
+					ROOK_SHIFTS, ROOK_TABLE);
+			initMagic(square, BISHOP_X, BISHOP_Y, BISHOP_MASKS,
+					BISHOP_MAGICS, BISHOP_SHIFTS, BISHOP_TABLE);
+		}
+	}
+
+	private Attacks() {
+	}
+
+	public static long knight(int square) {
+		return KNIGHT[square];
+	}
+
+	public static long king(int square) {
+		return KING[square];
+	}
+
+	public static long pawn(int color, int square) {
+		return PAWN[color][square];
+	}
+
+	public static long rook(int square, long occupied) {
+		long blockers = occupied & ROOK_MASKS[square];
+		return ROOK_TABLE[square][(int) ((blockers * ROOK_MAGICS[square]) >>> ROOK_SHIFTS[square])];
+	}
+
+	public static long bishop(int square, long occupied) {
+		long blockers = occupied & BISHOP_MASKS[square];
+		return BISHOP_TABLE[square][(int) ((blockers * BISHOP_MAGICS[square]) >>> BISHOP_SHIFTS[square])];
+	}
+
+	public static long queen(int square, long occupied) {
+		return rook(square, occupied) | bishop(square, occupied);
+	}
+
+	public static long between(int from, int to) {
+		// the squares strictly between two squares on a line, else empty
+		return BETWEEN[from][to];
+	}
+
+	private static long bit(int x, int y) {
+		if (x < 0 || x > 7 || y < 0 || y > 7) {
+			return 0;
+		}
+		return 1L << Board.square(x, y);
+	}
+
+	private static long slide(int square, long occupied, int[] xs, int[] ys) {
+		long attacks = 0;
+		for (int i = 0; i < xs.length; i++) {
+			int x = Board.file(square) + xs[i];
+			int y = Board.rank(square) + ys[i];
+			while (bit(x, y) != 0) {
+				attacks |= bit(x, y);
+				if ((occupied & bit(x, y)) != 0) {
+					break;
+				}
+				x += xs[i];
+				y += ys[i];
+			}
+		}
+		return attacks;
+	}
+
+	private static void initMagic(int square, int[] xs, int[] ys,
+			long[] masks, long[] magics, int[] shifts, long[][] tables) {
+		// relevant blockers are the ray squares short of the board edge
+		long mask = 0;
+		for (int i = 0; i < xs.length; i++) {
+			int x = Board.file(square) + xs[i];
+			int y = Board.rank(square) + ys[i];
+			while (bit(x + xs[i], y + ys[i]) != 0) {
+				mask |= bit(x, y);
+				x += xs[i];
+				y += ys[i];
+			}
+		}
+		int bits = Long.bitCount(mask);
+		int size = 1 << bits;
+		long[] occupancies = new long[size];
+		long[] attacks = new long[size];
+		long subset = 0;
+		for (int i = 0; i < size; i++) {
+			occupancies[i] = subset;
+			attacks[i] = slide(square, subset, xs, ys);
+			subset = (subset - mask) & mask;
+		}
+		long[] table = new long[size];
+		int[] used = new int[size];
+		seed = SEEDS[Board.rank(square)];
+		int attempt = 0;
+		while (true) {
+			attempt++;
+			long magic = random() & random() & random();
+			if (Long.bitCount((mask * magic) & 0xFF00000000000000L) < 6) {
+				continue;
+			}
+			boolean collision = false;
+			for (int i = 0; i < size && !collision; i++) {
+				int index = (int) ((occupancies[i] * magic) >>> (64 - bits));
+				if (used[index] != attempt) {
+					used[index] = attempt;
+					table[index] = attacks[i];
+				} else if (table[index] != attacks[i]) {
+					collision = true;
+				}
+			}
+			if (!collision) {
+				masks[square] = mask;
+				magics[square] = magic;
+				shifts[square] = 64 - bits;
+				tables[square] = table;
+				return;
+			}
+		}
+	}
+
+	private static long random() {
+		seed ^= seed >>> 12;
+		seed ^= seed << 25;
+		seed ^= seed >>> 27;
+		return seed * 2685821657736338717L;
+	}
+}
@@ -0,0 +1,663 @@
+package chess;
+
+import java.util.Arrays;
+
+class Board {
+	public static final int WHITE = 0;
+	public static final int BLACK = 1;
+
+	public static final int PAWN = 0;
+	public static final int KNIGHT = 1;
+	public static final int BISHOP = 2;
+	public static final int ROOK = 3;
+	public static final int QUEEN = 4;
+	public static final int KING = 5;
+
+	public static final int NO_PIECE = -1;
+	public static final int NO_SQUARE = -1;
+
+	public static final int WHITE_SHORT = 1;
+	public static final int WHITE_LONG = 2;
+	public static final int BLACK_SHORT = 4;
+	public static final int BLACK_LONG = 8;
+	public static final int ALL_CASTLING = 15;
+
+	public static final int MAX_MOVES = 256;
+	private static final long LIGHT_SQUARES = 0x55AA55AA55AA55AAL;
+
+	// castling rights kept when a move touches the square
+	private static final int[] CASTLING_MASKS = new int[64];
+
+	static {
+		for (int i = 0; i < 64; i++) {
+			CASTLING_MASKS[i] = ALL_CASTLING;
+		}
+		CASTLING_MASKS[square(0, 0)] &= ~WHITE_LONG;
+		CASTLING_MASKS[square(7, 0)] &= ~WHITE_SHORT;
+		CASTLING_MASKS[square(4, 0)] &= ~(WHITE_SHORT | WHITE_LONG);
+		CASTLING_MASKS[square(0, 7)] &= ~BLACK_LONG;
+		CASTLING_MASKS[square(7, 7)] &= ~BLACK_SHORT;
+		CASTLING_MASKS[square(4, 7)] &= ~(BLACK_SHORT | BLACK_LONG);
+	}
+
+	// one bitboard per piece type per color, indexed by piece(color, type)
+	private final long[] pieces = new long[12];
+	private final long[] colors = new long[2];
+	private long occupied;
+	private final int[] squares = new int[64];
+
+	private int side = WHITE;
+	private int castling;
+	private int enPassant = NO_SQUARE;
+	private long key;
+	private int halfmoveClock;
+	private int fullmoveNumber = 1;
+	// evaluation sums kept up to date as pieces come and go
+	private final int[] middlegame = new int[2];
+	private final int[] endgame = new int[2];
+	private int phase;
+
+	// make/unmake history, one entry per ply
+	private int[] moveStack = new int[64];
+	private int[] capturedStack = new int[64];
+	private int[] castlingStack = new int[64];
+	private int[] enPassantStack = new int[64];
+	private int[] halfmoveStack = new int[64];
+	private long[] keyStack = new long[64];
+	private int ply;
+	private final int[] castlingMoves = new int[2];
+
+	public Board() {
+		for (int i = 0; i < 64; i++) {
+			squares[i] = NO_PIECE;
+		}
+	}
+
+	public Board(Board other) {
+		System.arraycopy(other.pieces, 0, pieces, 0, pieces.length);
+		System.arraycopy(other.colors, 0, colors, 0, colors.length);
+		System.arraycopy(other.squares, 0, squares, 0, squares.length);
+		occupied = other.occupied;
+		side = other.side;
+		castling = other.castling;
+		enPassant = other.enPassant;
+		key = other.key;
+		System.arraycopy(other.middlegame, 0, middlegame, 0, 2);
+		System.arraycopy(other.endgame, 0, endgame, 0, 2);
+		phase = other.phase;
+		ply = other.ply;
+		moveStack = other.moveStack.clone();
+		capturedStack = other.capturedStack.clone();
+		castlingStack = other.castlingStack.clone();
+		enPassantStack = other.enPassantStack.clone();
+		halfmoveStack = other.halfmoveStack.clone();
+		halfmoveClock = other.halfmoveClock;
+		fullmoveNumber = other.fullmoveNumber;
+		keyStack = other.keyStack.clone();
+	}
+
+	public static int square(int x, int y) {
+		return (y << 3) | x;
+	}
+
+	public static int square(ChessPosition position) {
+		return square(position.getX(), position.getY());
+	}
+
+	public static int file(int square) {
+		return square & 7;
+	}
+
+	public static int rank(int square) {
+		return square >>> 3;
+	}
+
+	public static String squareName(int square) {
+		return "" + (char) ('a' + file(square)) + (char) ('1' + rank(square));
+	}
+
+	public static int piece(int color, int type) {
+		return color * 6 + type;
+	}
+
+	public static int colorOf(int piece) {
+		return piece / 6;
+	}
+
+	public static int typeOf(int piece) {
+		return piece % 6;
+	}
+
+	public void put(int piece, int square) {
+		long bit = 1L << square;
+		pieces[piece] |= bit;
+		colors[colorOf(piece)] |= bit;
+		occupied |= bit;
+		squares[square] = piece;
+		key ^= Zobrist.piece(piece, square);
+		middlegame[colorOf(piece)] += Evaluation.middlegame(piece, square);
+		endgame[colorOf(piece)] += Evaluation.endgame(piece, square);
+		phase += Evaluation.phase(piece);
+	}
+
+	public int remove(int square) {
+		int piece = squares[square];
+		if (piece != NO_PIECE) {
+			long bit = ~(1L << square);
+			pieces[piece] &= bit;
+			colors[colorOf(piece)] &= bit;
+			occupied &= bit;
+			squares[square] = NO_PIECE;
+			key ^= Zobrist.piece(piece, square);
+			middlegame[colorOf(piece)] -= Evaluation.middlegame(piece, square);
+			endgame[colorOf(piece)] -= Evaluation.endgame(piece, square);
+			phase -= Evaluation.phase(piece);
+		}
+		return piece;
+	}
+
+	public void move(int from, int to) {
+		int piece = squares[from];
+		if (piece == NO_PIECE) {
+			return;
+		}
+		long bits = (1L << from) | (1L << to);
+		pieces[piece] ^= bits;
+		colors[colorOf(piece)] ^= bits;
+		occupied ^= bits;
+		squares[from] = NO_PIECE;
+		squares[to] = piece;
+		key ^= Zobrist.piece(piece, from) ^ Zobrist.piece(piece, to);
+		int color = colorOf(piece);
+		middlegame[color] += Evaluation.middlegame(piece, to)
+				- Evaluation.middlegame(piece, from);
+		endgame[color] += Evaluation.endgame(piece, to)
+				- Evaluation.endgame(piece, from);
+	}
+
+	private void growStacks() {
+		if (ply == moveStack.length) {
+			moveStack = Arrays.copyOf(moveStack, ply * 2);
+			capturedStack = Arrays.copyOf(capturedStack, ply * 2);
+			castlingStack = Arrays.copyOf(castlingStack, ply * 2);
+			enPassantStack = Arrays.copyOf(enPassantStack, ply * 2);
+			halfmoveStack = Arrays.copyOf(halfmoveStack, ply * 2);
+			keyStack = Arrays.copyOf(keyStack, ply * 2);
+		}
+	}
+
+	public void makeMove(int move) {
+		growStacks();
+		int from = Move.getFrom(move);
+		int to = Move.getTo(move);
+		int type = Move.getType(move);
+		int piece = squares[from];
+		int capturedSquare = to;
+		if (type == Move.EN_PASSANT) {
+			capturedSquare = square(file(to), rank(from));
+		}
+		moveStack[ply] = move;
+		castlingStack[ply] = castling;
+		enPassantStack[ply] = enPassant;
+		halfmoveStack[ply] = halfmoveClock;
+		keyStack[ply] = key;
+		capturedStack[ply] = remove(capturedSquare);
+		ply++;
+		move(from, to);
+		if (type == Move.LONG_CASTLE) {
+			move(square(0, rank(to)), square(3, rank(to)));
+		} else if (type == Move.SHORT_CASTLE) {
+			move(square(7, rank(to)), square(5, rank(to)));
+		} else if (type == Move.PROMOTED) {
+			remove(to);
+			put(piece(colorOf(piece), Move.getPromotion(move)), to);
+		}
+		setEnPassantSquare(NO_SQUARE);
+		if (typeOf(piece) == PAWN && Math.abs(to - from) == 16) {
+			setEnPassantSquare((from + to) / 2);
+		}
+		setCastlingRights(castling & CASTLING_MASKS[from] & CASTLING_MASKS[to]);
+		if (typeOf(piece) == PAWN || capturedStack[ply - 1] != NO_PIECE) {
+			halfmoveClock = 0;
+		} else {
+			halfmoveClock++;
+		}
+		if (side == BLACK) {
+			fullmoveNumber++;
+		}
+		setSideToMove(side ^ 1);
+	}
+
+	public void unmakeMove() {
+		ply--;
+		int move = moveStack[ply];
+		int from = Move.getFrom(move);
+		int to = Move.getTo(move);
+		int type = Move.getType(move);
+		int piece = remove(to);
+		if (type == Move.PROMOTED) {
+			piece = piece(colorOf(piece), PAWN);
+		}
+		put(piece, from);
+		if (type == Move.LONG_CASTLE) {
+			move(square(3, rank(to)), square(0, rank(to)));
+		} else if (type == Move.SHORT_CASTLE) {
+			move(square(5, rank(to)), square(7, rank(to)));
+		}
+		int captured = capturedStack[ply];
+		if (captured != NO_PIECE) {
+			if (type == Move.EN_PASSANT) {
+				put(captured, square(file(to), rank(from)));
+			} else {
+				put(captured, to);
+			}
+		}
+		castling = castlingStack[ply];
+		enPassant = enPassantStack[ply];
+		halfmoveClock = halfmoveStack[ply];
+		side ^= 1;
+		if (side == BLACK) {
+			fullmoveNumber--;
+		}
+		key = keyStack[ply];
+	}
+
+	public void makeNullMove() {
+		// passes the turn, for null-move pruning; the halfmove clock is
+		// reset so that repetitions are never looked for across it
+		growStacks();
+		moveStack[ply] = Move.NONE;
+		capturedStack[ply] = NO_PIECE;
+		castlingStack[ply] = castling;
+		enPassantStack[ply] = enPassant;
+		halfmoveStack[ply] = halfmoveClock;
+		keyStack[ply] = key;
+		ply++;
+		setEnPassantSquare(NO_SQUARE);
+		halfmoveClock = 0;
+		setSideToMove(side ^ 1);
+	}
+
+	public void unmakeNullMove() {
+		ply--;
+		enPassant = enPassantStack[ply];
+		halfmoveClock = halfmoveStack[ply];
+		side ^= 1;
+		key = keyStack[ply];
+	}
+
+	public boolean isLegal(int move) {
+		int us = colorOf(squares[Move.getFrom(move)]);
+		makeMove(move);
+		int king = getKingSquare(us);
+		boolean legal = king == NO_SQUARE || !isAttacked(king, us ^ 1);
+		unmakeMove();
+		return legal;
+	}
+
+	public int generateMoves(int[] moves, int index) {
+		return generateMoves(side, moves, index);
+	}
+
+	public int generateMoves(int us, int[] moves, int index) {
+		// pseudo-legal moves, isLegal filters those leaving the king in check
+		index = generateCaptures(us, moves, index);
+		return generateQuiets(us, moves, index);
+	}
+
+	public int generateCaptures(int[] moves, int index) {
+		return generateCaptures(side, moves, index);
+	}
+
+	public int generateCaptures(int us, int[] moves, int index) {
+		// captures, en passant and every promotion, the moves that change
+		// the material on the board
+		long enemy = colors[us ^ 1];
+		int forward = us == WHITE ? 8 : -8;
+		int lastRank = us == WHITE ? 7 : 0;
+		long pawns = pieces[piece(us, PAWN)];
+		while (pawns != 0) {
+			int from = Long.numberOfTrailingZeros(pawns);
+			pawns &= pawns - 1;
+			int to = from + forward;
+			if (rank(to) == lastRank && !isOccupied(to)) {
+				index = addPawnMove(moves, index, from, to, NO_PIECE, lastRank);
+			}
+			long captures = Attacks.pawn(us, from) & enemy;
+			while (captures != 0) {
+				to = Long.numberOfTrailingZeros(captures);
+				captures &= captures - 1;
+				index = addPawnMove(moves, index, from, to,
+						typeOf(squares[to]), lastRank);
+			}
+			if (us == side && enPassant != NO_SQUARE
+					&& (Attacks.pawn(us, from) & (1L << enPassant)) != 0) {
+				moves[index++] = Move.create(from, enPassant, Move.EN_PASSANT,
+						PAWN, PAWN);
+			}
+		}
+		for (int type = KNIGHT; type <= KING; type++) {
+			long bits = pieces[piece(us, type)];
+			while (bits != 0) {
+				int from = Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				long targets = getAttacks(type, from) & enemy;
+				while (targets != 0) {
+					int to = Long.numberOfTrailingZeros(targets);
+					targets &= targets - 1;
+					moves[index++] = Move.create(from, to, Move.MOVE, type,
+							typeOf(squares[to]));
+				}
+			}
+		}
+		return index;
+	}
+
+	public int generateQuiets(int[] moves, int index) {
+		return generateQuiets(side, moves, index);
+	}
+
+	public int generateQuiets(int us, int[] moves, int index) {
+		// the rest: pawn pushes short of promotion, piece moves to empty
+		// squares and castling
+		int forward = us == WHITE ? 8 : -8;
+		int startRank = us == WHITE ? 1 : 6;
+		int lastRank = us == WHITE ? 7 : 0;
+		long pawns = pieces[piece(us, PAWN)];
+		while (pawns != 0) {
+			int from = Long.numberOfTrailingZeros(pawns);
+			pawns &= pawns - 1;
+			int to = from + forward;
+			if (rank(to) != lastRank && !isOccupied(to)) {
+				moves[index++] = Move.create(from, to, Move.MOVE, PAWN, NO_PIECE);
+				if (rank(from) == startRank && !isOccupied(to + forward)) {
+					moves[index++] = Move.create(from, to + forward, Move.MOVE,
+							PAWN, NO_PIECE);
+				}
+			}
+		}
+		for (int type = KNIGHT; type <= KING; type++) {
+			long bits = pieces[piece(us, type)];
+			while (bits != 0) {
+				int from = Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				long targets = getAttacks(type, from) & ~occupied;
+				while (targets != 0) {
+					int to = Long.numberOfTrailingZeros(targets);
+					targets &= targets - 1;
+					moves[index++] = Move.create(from, to, Move.MOVE, type,
+							NO_PIECE);
+				}
+			}
+		}
+		return generateCastling(us, moves, index);
+	}
+
+	public boolean isPseudoLegal(int move) {
+		// whether the move could have been generated here, for moves kept
+		// from other positions such as hash moves and killers
+		int from = Move.getFrom(move);
+		int to = Move.getTo(move);
+		int type = Move.getType(move);
+		int moved = Move.getPiece(move);
+		if (move == Move.NONE || squares[from] != piece(side, moved)) {
+			return false;
+		}
+		if (type == Move.SHORT_CASTLE || type == Move.LONG_CASTLE) {
+			int count = generateCastling(side, castlingMoves, 0);
+			for (int i = 0; i < count; i++) {
+				if (castlingMoves[i] == move) {
+					return true;
+				}
+			}
+			return false;
+		}
+		long bit = 1L << to;
+		if (type == Move.EN_PASSANT) {
+			return to == enPassant && (Attacks.pawn(side, from) & bit) != 0;
+		}
+		int target = squares[to];
+		int captured = Move.getCaptured(move);
+		if (target == NO_PIECE ? captured != NO_PIECE
+				: colorOf(target) == side || typeOf(target) != captured) {
+			return false;
+		}
+		if (moved != PAWN) {
+			return type == Move.MOVE && (getAttacks(moved, from) & bit) != 0;
+		}
+		int forward = side == WHITE ? 8 : -8;
+		if ((rank(to) == (side == WHITE ? 7 : 0)) != (type == Move.PROMOTED)) {
+			return false;
+		}
+		if (captured != NO_PIECE) {
+			return (Attacks.pawn(side, from) & bit) != 0;
+		}
+		return to == from + forward
+				|| (to == from + 2 * forward
+						&& rank(from) == (side == WHITE ? 1 : 6) && !isOccupied(from
+						+ forward));
+	}
+
+	private int addPawnMove(int[] moves, int index, int from, int to,
+			int captured, int lastRank) {
+		if (rank(to) == lastRank) {
+			// queen first, then the under-promotions
+			for (int promotion = QUEEN; promotion >= KNIGHT; promotion--) {
+				moves[index++] = Move.create(from, to, Move.PROMOTED, PAWN,
+						captured, promotion);
+			}
+		} else {
+			moves[index++] = Move.create(from, to, Move.MOVE, PAWN, captured);
+		}
+		return index;
+	}
+
+	private int generateCastling(int us, int[] moves, int index) {
+		int shortRight = us == WHITE ? WHITE_SHORT : BLACK_SHORT;
+		int longRight = us == WHITE ? WHITE_LONG : BLACK_LONG;
+		if ((castling & (shortRight | longRight)) == 0) {
+			return index;
+		}
+		int rank = us == WHITE ? 0 : 7;
+		int king = square(4, rank);
+		int rook = piece(us, ROOK);
+		// the king may not castle out of or through check, the destination
+		// square is left to isLegal
+		if ((castling & shortRight) != 0 && squares[square(7, rank)] == rook
+				&& (Attacks.between(king, square(7, rank)) & occupied) == 0
+				&& !isAttacked(king, us ^ 1)
+				&& !isAttacked(king + 1, us ^ 1)) {
+			moves[index++] = Move.create(king, king + 2, Move.SHORT_CASTLE,
+					KING, NO_PIECE);
+		}
+		if ((castling & longRight) != 0 && squares[square(0, rank)] == rook
+				&& (Attacks.between(king, square(0, rank)) & occupied) == 0
+				&& !isAttacked(king, us ^ 1)
+				&& !isAttacked(king - 1, us ^ 1)) {
+			moves[index++] = Move.create(king, king - 2, Move.LONG_CASTLE,
+					KING, NO_PIECE);
+		}
+		return index;
+	}
+
+	public long getAttacks(int type, int square) {
+		switch (type) {
+		case KNIGHT:
+			return Attacks.knight(square);
+		case BISHOP:
+			return Attacks.bishop(square, occupied);
+		case ROOK:
+			return Attacks.rook(square, occupied);
+		case QUEEN:
+			return Attacks.queen(square, occupied);
+		case KING:
+			return Attacks.king(square);
+		default:
+			return 0;
+		}
+	}
+
+	public boolean isAttacked(int square, int byColor) {
+		// a pawn attacks the square if the square's own pawn attacks, seen
+		// from the other side, land on it
+		if ((Attacks.pawn(byColor ^ 1, square) & pieces[piece(byColor, PAWN)]) != 0
+				|| (Attacks.knight(square) & pieces[piece(byColor, KNIGHT)]) != 0
+				|| (Attacks.king(square) & pieces[piece(byColor, KING)]) != 0) {
+			return true;
+		}
+		long queens = pieces[piece(byColor, QUEEN)];
+		return (Attacks.bishop(square, occupied) & (pieces[piece(byColor, BISHOP)] | queens)) != 0
+				|| (Attacks.rook(square, occupied) & (pieces[piece(byColor, ROOK)] | queens)) != 0;
+	}
+
+	public long getAttackersTo(int square, long occupied) {
+		// pieces of both colors attacking the square, sliders seen through
+		// the given occupancy so that exchanges can uncover x-rays
+		long bishops = pieces[piece(WHITE, BISHOP)] | pieces[piece(BLACK, BISHOP)]
+				| pieces[piece(WHITE, QUEEN)] | pieces[piece(BLACK, QUEEN)];
+		long rooks = pieces[piece(WHITE, ROOK)] | pieces[piece(BLACK, ROOK)]
+				| pieces[piece(WHITE, QUEEN)] | pieces[piece(BLACK, QUEEN)];
+		return (Attacks.pawn(BLACK, square) & pieces[piece(WHITE, PAWN)])
+				| (Attacks.pawn(WHITE, square) & pieces[piece(BLACK, PAWN)])
+				| (Attacks.knight(square) & (pieces[piece(WHITE, KNIGHT)] | pieces[piece(BLACK, KNIGHT)]))
+				| (Attacks.king(square) & (pieces[piece(WHITE, KING)] | pieces[piece(BLACK, KING)]))
+				| (Attacks.bishop(square, occupied) & bishops)
+				| (Attacks.rook(square, occupied) & rooks);
+	}
+
+	public int getPiece(int square) {
+		return squares[square];
+	}
+
+	public boolean isOccupied(int square) {
+		return (occupied & (1L << square)) != 0;
+	}
+
+	public long getPieces(int color, int type) {
+		return pieces[piece(color, type)];
+	}
+
+	public long getPieces(int color) {
+		return colors[color];
+	}
+
+	public long getOccupied() {
+		return occupied;
+	}
+
+	public int getKingSquare(int color) {
+		long king = pieces[piece(color, KING)];
+		if (king == 0) {
+			return NO_SQUARE;
+		}
+		return Long.numberOfTrailingZeros(king);
+	}
+
+	public int getSideToMove() {
+		return side;
+	}
+
+	public void setSideToMove(int side) {
+		if (side != this.side) {
+			key ^= Zobrist.side();
+		}
+		this.side = side;
+	}
+
+	public int getCastlingRights() {
+		return castling;
+	}
+
+	public void setCastlingRights(int castling) {
+		key ^= Zobrist.castling(this.castling) ^ Zobrist.castling(castling);
+		this.castling = castling;
+	}
+
+	public int getEnPassantSquare() {
+		return enPassant;
+	}
+
+	public void setEnPassantSquare(int square) {
+		if (enPassant != NO_SQUARE) {
+			key ^= Zobrist.enPassant(enPassant);
+		}
+		enPassant = NO_SQUARE;
+		// only a square that can really be captured on changes the
+		// position, so repeated positions hash alike
+		if (square != NO_SQUARE) {
+			int capturer = rank(square) == 2 ? BLACK : WHITE;
+			if ((Attacks.pawn(capturer ^ 1, square) & pieces[piece(capturer, PAWN)]) != 0) {
+				enPassant = square;
+				key ^= Zobrist.enPassant(square);
+			}
+		}
+	}
+
+	public long getKey() {
+		return key;
+	}
+
+	public int getMiddlegameScore(int color) {
+		return middlegame[color];
+	}
+
+	public int getEndgameScore(int color) {
+		return endgame[color];
+	}
+
+	public int getPhase() {
+		return phase;
+	}
+
+	public int getHalfmoveClock() {
+		return halfmoveClock;
+	}
+
+	public void setHalfmoveClock(int halfmoveClock) {
+		this.halfmoveClock = halfmoveClock;
+	}
+
+	public int getFullmoveNumber() {
+		return fullmoveNumber;
+	}
+
+	public void setFullmoveNumber(int fullmoveNumber) {
+		this.fullmoveNumber = fullmoveNumber;
+	}
+
+	public boolean isInCheck() {
+		int king = getKingSquare(side);
+		return king != NO_SQUARE && isAttacked(king, side ^ 1);
+	}
+
+	public int getRepetitions() {
+		// earlier occurrences of this position, looking back only as far
+		// as the last capture or pawn move
+		int repetitions = 0;
+		int limit = Math.max(ply - halfmoveClock, 0);
+		for (int i = ply - 2; i >= limit; i -= 2) {
+			if (keyStack[i] == key) {
+				repetitions++;
+			}
+		}
+		return repetitions;
+	}
+
+	public boolean isInsufficientMaterial() {
+		if ((pieces[piece(WHITE, PAWN)] | pieces[piece(BLACK, PAWN)]
+				| pieces[piece(WHITE, ROOK)] | pieces[piece(BLACK, ROOK)]
+				| pieces[piece(WHITE, QUEEN)] | pieces[piece(BLACK, QUEEN)]) != 0) {
+			return false;
+		}
+		long knights = pieces[piece(WHITE, KNIGHT)]
+				| pieces[piece(BLACK, KNIGHT)];
+		long bishops = pieces[piece(WHITE, BISHOP)]
+				| pieces[piece(BLACK, BISHOP)];
+		if (Long.bitCount(knights | bishops) <= 1) {
+			return true;
+		}
+		// any number of bishops all on one square color cannot mate
+		return knights == 0
+				&& ((bishops & LIGHT_SQUARES) == 0 || (bishops & ~LIGHT_SQUARES) == 0);
+	}
+}
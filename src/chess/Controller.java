@@ -15,7 +15,7 @@ public class Controller extends Observable implements ViewListener, Observer {
 	private Model model;
 	private View view;
 	private Pattern move_pattern = Pattern
-			.compile("\\s*(\\w)\\s*(\\d)\\s*(\\w)\\s*(\\d)");
+			.compile("\\s*(\\w)\\s*(\\d)\\s*(\\w)\\s*(\\d)\\s*([qrbnQRBN])?\\s*");
 	private Pattern legacy_move_pattern = Pattern
 			.compile("move\\s*\\(\\s*(\\d)\\s*,\\s*(\\d)\\s*\\)\\s*->\\s*\\(\\s*(\\d)\\s*,\\s*(\\d)\\s*\\)");
 	private boolean isFirstClick;
@@ -105,6 +105,9 @@ public class Controller extends Observable implements ViewListener, Observer {
 	private void handleAttemptedMove(ChessMove chessMove) {
 		try {
 			model.move(chessMove);
+			if (model.getStatus() != GameStatus.IN_PROGRESS) {
+				setTextField(model.getStatus().getDescription());
+			}
 		} catch (IllegalMove e) {
 			setTextField("Illegal Move");
 			firstMouseEvent = null;
@@ -142,8 +145,13 @@ public class Controller extends Observable implements ViewListener, Observer {
 				ChessPosition from = convert(input, true, matcher);
 				ChessPosition to = convert(input, false, matcher);
 				ChessPiece piece = model.getPieceOnBoard(from);
+				int promotion = Board.QUEEN;
+				if (matcher.group(5) != null) {
+					promotion = "nbrq".indexOf(Character.toLowerCase(matcher
+							.group(5).charAt(0))) + Board.KNIGHT;
+				}
 				setTextField(input);
-				handleAttemptedMove(new ChessMove(piece, from, to));
+				handleAttemptedMove(new ChessMove(piece, from, to, promotion));
 				return;
 			} else if (matcher2.matches()) {
 				ChessPosition from = new ChessPosition(
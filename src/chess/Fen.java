@@ -0,0 +1,145 @@
+package chess;
+
+class Fen {
+	public static final String START_POSITION = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+	private static final String PIECE_MARKS = "PNBRQKpnbrqk";
+	private static final String CASTLING_MARKS = "KQkq";
+
+	private Fen() {
+	}
+
+	public static Board parse(String fen) {
+		String[] fields = fen.trim().split("\\s+");
+		if (fields.length < 4) {
+			throw new IllegalArgumentException("Invalid FEN: " + fen);
+		}
+		Board board = new Board();
+		String[] ranks = fields[0].split("/");
+		if (ranks.length != 8) {
+			throw new IllegalArgumentException("Invalid FEN placement: "
+					+ fields[0]);
+		}
+		for (int i = 0; i < 8; i++) {
+			int y = 7 - i;
+			int x = 0;
+			for (char c : ranks[i].toCharArray()) {
+				if (c >= '1' && c <= '8') {
+					x += c - '0';
+				} else if (PIECE_MARKS.indexOf(c) >= 0 && x < 8) {
+					board.put(PIECE_MARKS.indexOf(c), Board.square(x, y));
+					x++;
+				} else {
+					throw new IllegalArgumentException("Invalid FEN rank: "
+							+ ranks[i]);
+				}
+			}
+			if (x != 8) {
+				throw new IllegalArgumentException("Invalid FEN rank: "
+						+ ranks[i]);
+			}
+		}
+		if (fields[1].equals("w")) {
+			board.setSideToMove(Board.WHITE);
+		} else if (fields[1].equals("b")) {
+			board.setSideToMove(Board.BLACK);
+		} else {
+			throw new IllegalArgumentException("Invalid FEN side to move: "
+					+ fields[1]);
+		}
+		int castling = 0;
+		if (!fields[2].equals("-")) {
+			for (char c : fields[2].toCharArray()) {
+				int index = CASTLING_MARKS.indexOf(c);
+				if (index < 0) {
+					throw new IllegalArgumentException(
+							"Invalid FEN castling rights: " + fields[2]);
+				}
+				castling |= 1 << index;
+			}
+		}
+		board.setCastlingRights(castling & getPossibleCastling(board));
+		if (!fields[3].equals("-")) {
+			board.setEnPassantSquare(parseSquare(fields[3]));
+		}
+		try {
+			if (fields.length > 4) {
+				board.setHalfmoveClock(Integer.parseInt(fields[4]));
+			}
+			if (fields.length > 5) {
+				board.setFullmoveNumber(Integer.parseInt(fields[5]));
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid FEN move clocks: "
+					+ fen);
+		}
+		return board;
+	}
+
+	private static int getPossibleCastling(Board board) {
+		// rights are only kept while the king and rook are on their squares
+		int possible = 0;
+		for (int i = 0; i < 4; i++) {
+			int color = i < 2 ? Board.WHITE : Board.BLACK;
+			int rank = color == Board.WHITE ? 0 : 7;
+			int rookFile = i % 2 == 0 ? 7 : 0;
+			if (board.getPiece(Board.square(4, rank)) == Board.piece(color,
+					Board.KING)
+					&& board.getPiece(Board.square(rookFile, rank)) == Board
+							.piece(color, Board.ROOK)) {
+				possible |= 1 << i;
+			}
+		}
+		return possible;
+	}
+
+	public static int parseSquare(String name) {
+		if (name.length() != 2 || name.charAt(0) < 'a' || name.charAt(0) > 'h'
+				|| name.charAt(1) < '1' || name.charAt(1) > '8') {
+			throw new IllegalArgumentException("Invalid square: " + name);
+		}
+		return Board.square(name.charAt(0) - 'a', name.charAt(1) - '1');
+	}
+
+	public static String toFen(Board board) {
+		StringBuilder fen = new StringBuilder();
+		for (int y = 7; y >= 0; y--) {
+			int empty = 0;
+			for (int x = 0; x < 8; x++) {
+				int piece = board.getPiece(Board.square(x, y));
+				if (piece == Board.NO_PIECE) {
+					empty++;
+					continue;
+				}
+				if (empty > 0) {
+					fen.append(empty);
+					empty = 0;
+				}
+				fen.append(PIECE_MARKS.charAt(piece));
+			}
+			if (empty > 0) {
+				fen.append(empty);
+			}
+			if (y > 0) {
+				fen.append('/');
+			}
+		}
+		fen.append(board.getSideToMove() == Board.WHITE ? " w " : " b ");
+		int castling = board.getCastlingRights();
+		if (castling == 0) {
+			fen.append('-');
+		}
+		for (int i = 0; i < 4; i++) {
+			if ((castling & (1 << i)) != 0) {
+				fen.append(CASTLING_MARKS.charAt(i));
+			}
+		}
+		fen.append(' ');
+		int enPassant = board.getEnPassantSquare();
+		fen.append(enPassant == Board.NO_SQUARE ? "-" : Board
+				.squareName(enPassant));
+		fen.append(' ').append(board.getHalfmoveClock());
+		fen.append(' ').append(board.getFullmoveNumber());
+		return fen.toString();
+	}
+}
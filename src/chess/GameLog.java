@@ -0,0 +1,348 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+public class GameLog {
+	// a game log is two files:
+	// data: header, then per game a record of
+	// u16 ply count, u8 result, u8 FEN length (0 for the start position),
+	// the FEN in ASCII and one u16 per move
+	// index: header, then the u64 data offset of every game in order
+	// both are big-endian and only ever appended to
+	public static final int DATA_MAGIC = 0x43484C47; // "CHLG"
+	public static final int INDEX_MAGIC = 0x43484C49; // "CHLI"
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 8;
+	public static final int MAX_PLIES = 0xFFFF;
+	public static final int MAX_FEN_LENGTH = 0xFF;
+	public static final int MAX_RECORD_SIZE = 4 + MAX_FEN_LENGTH + 2
+			* MAX_PLIES;
+
+	public static final int UNKNOWN = 0;
+	public static final int WHITE_WINS = 1;
+	public static final int BLACK_WINS = 2;
+	public static final int DRAW = 3;
+	private static final String[] RESULTS = { "*", "1-0", "0-1", "1/2-1/2" };
+
+	private GameLog() {
+	}
+
+	public static Path getIndexPath(Path data) {
+		return Paths.get(data.toString() + ".idx");
+	}
+
+	public static int encode(int move) {
+		// from bits 0-5, to 6-11, promotion type 12-14 (0 for none); the
+		// rest of a move follows from the position it is played in
+		int code = Move.getFrom(move) | (Move.getTo(move) << 6);
+		if (Move.getType(move) == Move.PROMOTED) {
+			code |= Move.getPromotion(move) << 12;
+		}
+		return code;
+	}
+
+	public static int decode(Board board, int code, int[] moves) {
+		int count = board.generateMoves(moves, 0);
+		for (int i = 0; i < count; i++) {
+			int move = moves[i];
+			if (encode(move) == code && board.isLegal(move)) {
+				return move;
+			}
+		}
+		return Move.NONE;
+	}
+
+	public static int parseResult(String result) {
+		for (int i = 0; i < RESULTS.length; i++) {
+			if (RESULTS[i].equals(result)) {
+				return i;
+			}
+		}
+		return UNKNOWN;
+	}
+
+	public static String toString(int result) {
+		return RESULTS[result];
+	}
+
+	public static int getResult(GameStatus status, boolean whiteToMove) {
+		if (status == GameStatus.CHECKMATE) {
+			return whiteToMove ? BLACK_WINS : WHITE_WINS;
+		}
+		return status.isDraw() ? DRAW : UNKNOWN;
+	}
+
+	public static void main(String[] args) throws IOException {
+		// GameLog import <pgn> <log> | GameLog scan <log>
+		PrintStream out = System.out;
+		if (args.length == 3 && args[0].equals("import")) {
+			long start = System.nanoTime();
+			long games = 0;
+			try (PgnReader reader = new PgnReader(new InputStreamReader(
+					new FileInputStream(args[1]), StandardCharsets.ISO_8859_1));
+					GameLogWriter writer = new GameLogWriter(Paths.get(args[2]))) {
+				PgnGame game;
+				while ((game = reader.next()) != null) {
+					try {
+						writer.append(game.replay(),
+								parseResult(game.getResult()));
+						games++;
+					} catch (IllegalArgumentException e) {
+						System.err.println(e.getMessage());
+					}
+				}
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			out.printf("imported %d games in %.2f s%n", games, seconds);
+		} else if (args.length == 2 && args[0].equals("scan")) {
+			long start = System.nanoTime();
+			long plies = 0;
+			int[] moves = new int[Board.MAX_MOVES];
+			try (GameLogReader reader = new GameLogReader(Paths.get(args[1]))) {
+				for (int game = 0; game < reader.getGameCount(); game++) {
+					Board board = reader.getStartBoard(game);
+					int count = reader.getPlyCount(game);
+					for (int ply = 0; ply < count; ply++) {
+						int move = decode(board, reader.getMove(game, ply), moves);
+						if (move == Move.NONE) {
+							throw new IOException("Game " + game + ", ply "
+									+ (ply + 1) + ": corrupt move");
+						}
+						board.makeMove(move);
+					}
+					plies += count;
+				}
+				double seconds = (System.nanoTime() - start) / 1e9;
+				out.printf("games %d  plies %d  bytes %d  time %.2f s  %,.0f games/s%n",
+						reader.getGameCount(), plies, reader.getDataSize(),
+						seconds, reader.getGameCount() / seconds);
+			}
+		} else {
+			System.err.println("usage: GameLog import <pgn> <log> | GameLog scan <log>");
+			System.exit(2);
+		}
+	}
+}
+
+class GameLogWriter implements Closeable {
+	// index entries wait until a batch of records has been forced to disk
+	private static final int BATCH_SIZE = 4096;
+
+	private final FileChannel data;
+	private final FileChannel index;
+	private final ByteBuffer record = ByteBuffer
+			.allocate(GameLog.MAX_RECORD_SIZE);
+	private final ByteBuffer entries = ByteBuffer.allocate(8 * BATCH_SIZE);
+	private long offset;
+	private int games;
+
+	public GameLogWriter(Path path) throws IOException {
+		data = open(path, GameLog.DATA_MAGIC);
+		index = open(GameLog.getIndexPath(path), GameLog.INDEX_MAGIC);
+		// a crash in the middle of an index entry leaves a torn tail, which
+		// is dropped so that later entries line up again
+		if ((index.size() & 7) != 0) {
+			index.truncate(index.size() & ~7L);
+			index.position(index.size());
+		}
+		offset = data.size();
+		games = (int) ((index.size() - GameLog.HEADER_SIZE) / 8);
+	}
+
+	private static FileChannel open(Path path, int magic) throws IOException {
+		FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		ByteBuffer header = ByteBuffer.allocate(GameLog.HEADER_SIZE);
+		if (channel.size() == 0) {
+			header.putInt(magic).putInt(GameLog.VERSION).flip();
+			channel.write(header, 0);
+		} else {
+			channel.read(header, 0);
+			header.flip();
+			if (header.remaining() < GameLog.HEADER_SIZE
+					|| header.getInt() != magic
+					|| header.getInt() != GameLog.VERSION) {
+				channel.close();
+				throw new IOException("Not a game log: " + path);
+			}
+		}
+		channel.position(channel.size());
+		return channel;
+	}
+
+	public int append(Model model, int result) throws IOException {
+		ArrayList<ChessMove> log = model.getLog();
+		int[] moves = new int[log.size()];
+		for (int i = 0; i < moves.length; i++) {
+			moves[i] = log.get(i).getPacked();
+		}
+		return append(model.getStartFen(), moves, moves.length, result);
+	}
+
+	public int append(String fen, int[] moves, int count, int result)
+			throws IOException {
+		// records are forced to disk a batch at a time before their index
+		// entries are written, so a crash can lose the games since the last
+		// flush and leave unindexed bytes at the end, but never an offset
+		// past the durable data
+		if (count > GameLog.MAX_PLIES) {
+			throw new IllegalArgumentException("Game too long: " + count
+					+ " plies");
+		}
+		byte[] fenBytes = fen.equals(Fen.START_POSITION) ? new byte[0] : fen
+				.getBytes(StandardCharsets.US_ASCII);
+		if (fenBytes.length > GameLog.MAX_FEN_LENGTH) {
+			throw new IllegalArgumentException("FEN too long: " + fen);
+		}
+		record.clear();
+		record.putShort((short) count).put((byte) result)
+				.put((byte) fenBytes.length).put(fenBytes);
+		for (int i = 0; i < count; i++) {
+			record.putShort((short) GameLog.encode(moves[i]));
+		}
+		record.flip();
+		long start = offset;
+		while (record.hasRemaining()) {
+			offset += data.write(record);
+		}
+		entries.putLong(start);
+		if (!entries.hasRemaining()) {
+			flush();
+		}
+		return games++;
+	}
+
+	public void flush() throws IOException {
+		if (entries.position() == 0) {
+			return;
+		}
+		data.force(false);
+		entries.flip();
+		while (entries.hasRemaining()) {
+			index.write(entries);
+		}
+		index.force(false);
+		entries.clear();
+	}
+
+	public int getGameCount() {
+		return games;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			data.close();
+			index.close();
+		}
+	}
+}
+
+class GameLogReader implements Closeable {
+	private final MappedFile data;
+	private final MappedFile index;
+	private final int games;
+
+	public GameLogReader(Path path) throws IOException {
+		data = new MappedFile(path, GameLog.MAX_RECORD_SIZE);
+		index = new MappedFile(GameLog.getIndexPath(path), 0);
+		check(data, GameLog.DATA_MAGIC, path);
+		check(index, GameLog.INDEX_MAGIC, GameLog.getIndexPath(path));
+		games = (int) ((index.size() - GameLog.HEADER_SIZE) / 8);
+	}
+
+	private static void check(MappedFile file, int magic, Path path)
+			throws IOException {
+		if (file.size() < GameLog.HEADER_SIZE || file.getInt(0) != magic
+				|| file.getInt(4) != GameLog.VERSION) {
+			throw new IOException("Not a game log: " + path);
+		}
+	}
+
+	public int getGameCount() {
+		return games;
+	}
+
+	public long getDataSize() {
+		return data.size();
+	}
+
+	private long getOffset(int game) {
+		if (game < 0 || game >= games) {
+			throw new IllegalArgumentException("No game " + game);
+		}
+		return index.getLong(GameLog.HEADER_SIZE + 8L * game);
+	}
+
+	public int getPlyCount(int game) {
+		return data.getShort(getOffset(game)) & 0xFFFF;
+	}
+
+	public int getResult(int game) {
+		return data.get(getOffset(game) + 2);
+	}
+
+	public String getStartFen(int game) {
+		long offset = getOffset(game);
+		int length = data.get(offset + 3) & 0xFF;
+		if (length == 0) {
+			return Fen.START_POSITION;
+		}
+		byte[] fen = new byte[length];
+		for (int i = 0; i < length; i++) {
+			fen[i] = data.get(offset + 4 + i);
+		}
+		return new String(fen, StandardCharsets.US_ASCII);
+	}
+
+	public Board getStartBoard(int game) {
+		return Fen.parse(getStartFen(game));
+	}
+
+	public int getMove(int game, int ply) {
+		// the 16-bit code, see GameLog.decode
+		if (ply < 0 || ply >= getPlyCount(game)) {
+			throw new IndexOutOfBoundsException("Game " + game + " has no ply "
+					+ ply);
+		}
+		long offset = getOffset(game);
+		int length = data.get(offset + 3) & 0xFF;
+		return data.getShort(offset + 4 + length + 2L * ply) & 0xFFFF;
+	}
+
+	public Model replay(int game) {
+		Model model = new Model("White", "Black", getStartFen(game));
+		int[] moves = new int[Board.MAX_MOVES];
+		int count = getPlyCount(game);
+		for (int ply = 0; ply < count; ply++) {
+			int move = GameLog.decode(model.getBoard(), getMove(game, ply),
+					moves);
+			if (move == Move.NONE) {
+				throw new IllegalArgumentException("Game " + game + ", ply "
+						+ (ply + 1) + ": corrupt move");
+			}
+			model.move(move);
+		}
+		return model;
+	}
+
+	@Override
+	public void close() throws IOException {
+		data.close();
+		index.close();
+	}
+}
@@ -0,0 +1,57 @@
+package chess;
+
+public enum GameStatus {
+	IN_PROGRESS("In progress"), CHECK("Check"), CHECKMATE("Checkmate"), STALEMATE(
+			"Stalemate"), THREEFOLD_REPETITION("Draw by threefold repetition"), FIFTY_MOVE_RULE(
+			"Draw by the fifty-move rule"), INSUFFICIENT_MATERIAL(
+			"Draw by insufficient material"), TABLEBASE_WIN(
+			"Won for the side to move by the tablebase"), TABLEBASE_LOSS(
+			"Lost for the side to move by the tablebase"), TABLEBASE_DRAW(
+			"Drawn by the tablebase");
+
+	private final String description;
+
+	private GameStatus(String description) {
+		this.description = description;
+	}
+
+	public boolean isOver() {
+		// a tablebase result is known but still has to be played out
+		return this != IN_PROGRESS && this != CHECK && this != TABLEBASE_WIN
+				&& this != TABLEBASE_LOSS && this != TABLEBASE_DRAW;
+	}
+
+	public boolean isDraw() {
+		return isOver() && this != CHECKMATE;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	static GameStatus of(Board board, boolean hasLegalMove,
+			Tablebase tablebase) {
+		// tablebase may be null
+		// mate and stalemate take precedence over the draw rules
+		boolean inCheck = board.isInCheck();
+		if (!hasLegalMove) {
+			return inCheck ? CHECKMATE : STALEMATE;
+		}
+		if (board.isInsufficientMaterial()) {
+			return INSUFFICIENT_MATERIAL;
+		}
+		if (board.getRepetitions() >= 2) {
+			return THREEFOLD_REPETITION;
+		}
+		if (board.getHalfmoveClock() >= 100) {
+			return FIFTY_MOVE_RULE;
+		}
+		int score = tablebase != null ? tablebase.probe(board)
+				: Tablebase.UNKNOWN;
+		if (score != Tablebase.UNKNOWN) {
+			return score > 0 ? TABLEBASE_WIN : score < 0 ? TABLEBASE_LOSS
+					: TABLEBASE_DRAW;
+		}
+		return inCheck ? CHECK : IN_PROGRESS;
+	}
+}
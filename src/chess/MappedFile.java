@@ -0,0 +1,65 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+class MappedFile implements Closeable {
+	// a mapping is limited to 2GB, so large files are mapped as 1GB
+	// segments, each reaching a little into the next so that a record
+	// starting in one segment can always be read from it
+	private static final long SEGMENT_SIZE = 1L << 30;
+
+	private final FileChannel channel;
+	private final long size;
+	private final MappedByteBuffer[] segments;
+
+	public MappedFile(Path path, long overlap) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		size = channel.size();
+		int count = (int) Math.max((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE, 1);
+		segments = new MappedByteBuffer[count];
+		for (int i = 0; i < count; i++) {
+			long start = i * SEGMENT_SIZE;
+			long length = Math.min(size - start, SEGMENT_SIZE + overlap);
+			segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+					Math.max(length, 0));
+		}
+	}
+
+	public long size() {
+		return size;
+	}
+
+	public byte get(long position) {
+		int segment = (int) (position / SEGMENT_SIZE);
+		return segments[segment].get((int) (position - segment * SEGMENT_SIZE));
+	}
+
+	public short getShort(long position) {
+		int segment = (int) (position / SEGMENT_SIZE);
+		return segments[segment].getShort((int) (position - segment
+				* SEGMENT_SIZE));
+	}
+
+	public int getInt(long position) {
+		int segment = (int) (position / SEGMENT_SIZE);
+		return segments[segment].getInt((int) (position - segment
+				* SEGMENT_SIZE));
+	}
+
+	public long getLong(long position) {
+		int segment = (int) (position / SEGMENT_SIZE);
+		return segments[segment].getLong((int) (position - segment
+				* SEGMENT_SIZE));
+	}
+
+	@Override
+	public void close() throws IOException {
+		// the mappings stay valid until they are garbage collected
+		channel.close();
+	}
+}
@@ -7,65 +7,147 @@ import java.util.Observer;
 public class Model extends java.util.Observable implements Observer {
 
 	private ArrayList<ChessPiece> piecesOnBoard;
+	private final Board board = new Board();
+	private final ChessPiece[] pieceViews = new ChessPiece[64];
+	private final int[] moveBuffer = new int[Board.MAX_MOVES];
+	private final int[] exchangeGains = new int[See.MAX_EXCHANGES];
+	// legal moves of the current position, built on first use after a
+	// move or undo and keyed by the position hash
+	private final int[] legalMoves = new int[Board.MAX_MOVES];
+	private int legalMoveCount = -1;
+	private long legalMovesKey;
+	private GameStatus status;
+	private Tablebase tablebase;
+	private final String startFen;
 	private ArrayList<ChessPiece> piecesOffBoard;
 	private boolean[][] highlightSquares;
 	private boolean areMovesHighlighted;
 	private ChessPlayer player1;
 	private ChessPlayer player2;
-	private boolean isPlayerTurn;
 	private ArrayList<ChessMove> log = new ArrayList<ChessMove>();
+	// headless until an observer is attached, so engine use never touches
+	// the synchronized Observable machinery
+	private boolean attached;
 
 	public Model(String player1Name, String player2Name) {
-		isPlayerTurn = true;
+		this(player1Name, player2Name, Fen.START_POSITION);
+	}
+
+	public Model(String player1Name, String player2Name, String fen) {
 		highlightSquares = new boolean[8][8];
 		piecesOnBoard = new ArrayList<ChessPiece>();
 		piecesOffBoard = new ArrayList<ChessPiece>();
 		this.player1 = new ChessPlayer(player1Name);
 		this.player2 = new ChessPlayer(player2Name);
-		this.player1.addObserver(this);
-		this.player2.addObserver(this);
 
-		ArrayList<ChessPiece> pieces = new ArrayList<ChessPiece>();
+		Board position = Fen.parse(fen);
+		for (int square = 0; square < 64; square++) {
+			int piece = position.getPiece(square);
+			if (piece != Board.NO_PIECE) {
+				setPieceOnBoard(createPiece(piece, square,
+						position.getCastlingRights()));
+			}
+		}
+		board.setSideToMove(position.getSideToMove());
+		board.setCastlingRights(getCastlingRights());
+		board.setEnPassantSquare(position.getEnPassantSquare());
+		board.setHalfmoveClock(position.getHalfmoveClock());
+		board.setFullmoveNumber(position.getFullmoveNumber());
+		startFen = Fen.toFen(board);
+	}
+
+	private ChessPiece createPiece(int piece, int square, int castling) {
+		ChessPlayer owner = Board.colorOf(piece) == Board.WHITE ? player1
+				: player2;
+		ChessPosition position = new ChessPosition(Board.file(square),
+				Board.rank(square));
+		int homeRank = Board.colorOf(piece) == Board.WHITE ? 0 : 7;
+		switch (Board.typeOf(piece)) {
+		case Board.PAWN:
+			Pawn pawn = new Pawn(owner, this, position);
+			int startRank = Board.colorOf(piece) == Board.WHITE ? 1 : 6;
+			if (position.getY() != startRank) {
+				// a pawn off its starting rank has already moved from it
+				pawn.setFirstMove(new ChessMove(pawn, new ChessPosition(
+						position.getX(), startRank), position));
+			}
+			return pawn;
+		case Board.KNIGHT:
+			return new Knight(owner, this, position);
+		case Board.BISHOP:
+			return new Bishop(owner, this, position);
+		case Board.ROOK:
+			Rook rook = new Rook(owner, this, position);
+			int right = 0;
+			if (position.equals(new ChessPosition(0, homeRank))) {
+				right = homeRank == 0 ? Board.WHITE_LONG : Board.BLACK_LONG;
+			} else if (position.equals(new ChessPosition(7, homeRank))) {
+				right = homeRank == 0 ? Board.WHITE_SHORT : Board.BLACK_SHORT;
+			}
+			if ((castling & right) == 0) {
+				// the FEN gives no castling right for this rook
+				rook.setFirstMove(new ChessMove(rook, position, position));
+			}
+			return rook;
+		case Board.QUEEN:
+			return new Queen(owner, this, position);
+		default:
+			King king = new King(owner, this, position);
+			int rights = homeRank == 0 ? Board.WHITE_SHORT | Board.WHITE_LONG
+					: Board.BLACK_SHORT | Board.BLACK_LONG;
+			if ((castling & rights) == 0) {
+				king.setFirstMove(new ChessMove(king, position, position));
+			}
+			return king;
+		}
+	}
 
-		pieces.add(new Rook(player1, this, new ChessPosition(0, 0)));
-		pieces.add(new Knight(player1, this, new ChessPosition(1, 0)));
-		pieces.add(new Bishop(player1, this, new ChessPosition(2, 0)));
-		pieces.add(new Queen(player1, this, new ChessPosition(3, 0)));
-		pieces.add(new King(player1, this, new ChessPosition(4, 0)));
-		pieces.add(new Bishop(player1, this, new ChessPosition(5, 0)));
-		pieces.add(new Knight(player1, this, new ChessPosition(6, 0)));
-		pieces.add(new Rook(player1, this, new ChessPosition(7, 0)));
+	@Override
+	public void update(Observable arg0, Object arg1) {
+		// only the players are observed, for name changes
+		notifyView(arg1);
+	}
 
-		for (int i = 0; i < 8; i++) {
-			pieces.add(new Pawn(player1, this, new ChessPosition(i, 1)));
+	@Override
+	public synchronized void addObserver(Observer observer) {
+		super.addObserver(observer);
+		if (!attached) {
+			attached = true;
+			player1.addObserver(this);
+			player2.addObserver(this);
 		}
+	}
 
-		pieces.add(new Rook(player2, this, new ChessPosition(0, 7)));
-		pieces.add(new Knight(player2, this, new ChessPosition(1, 7)));
-		pieces.add(new Bishop(player2, this, new ChessPosition(2, 7)));
-		pieces.add(new Queen(player2, this, new ChessPosition(3, 7)));
-		pieces.add(new King(player2, this, new ChessPosition(4, 7)));
-		pieces.add(new Bishop(player2, this, new ChessPosition(5, 7)));
-		pieces.add(new Knight(player2, this, new ChessPosition(6, 7)));
-		pieces.add(new Rook(player2, this, new ChessPosition(7, 7)));
-
-		for (int i = 0; i < 8; i++) {
-			pieces.add(new Pawn(player2, this, new ChessPosition(i, 6)));
+	public GameStatus getStatus() {
+		// worked out on first request after a change, from the cached
+		// legal moves
+		if (status == null) {
+			status = GameStatus.of(board, getLegalMoveCount() > 0, tablebase);
 		}
+		return status;
+	}
+
+	public void setTablebase(Tablebase tablebase) {
+		this.tablebase = tablebase;
+		status = null;
+	}
 
-		for (ChessPiece piece : pieces) {
-			setPieceOnBoard(piece);
+	public int getTablebaseScore() {
+		// the exact result for the side to move, see Tablebase.probe
+		if (tablebase == null || getStatus().isOver()) {
+			return Tablebase.UNKNOWN;
 		}
+		return tablebase.probe(board);
 	}
 
-	@Override
-	public void update(Observable arg0, Object arg1) {
-		if (arg0 instanceof ChessPlayer) {
-			setChanged();
-			notifyObservers(arg1);
-		} else {
+	public boolean isHeadless() {
+		return !attached;
+	}
+
+	private void notifyView(Object arg) {
+		if (attached) {
 			setChanged();
-			notifyObservers(getLog());
+			notifyObservers(arg);
 		}
 	}
 
@@ -85,25 +167,24 @@ public class Model extends java.util.Observable implements Observer {
 	}
 
 	public ChessPiece getPieceOnBoard(ChessPosition position) {
-		ChessPiece pieceAtPosition = null;
-		for (ChessPiece piece : piecesOnBoard) {
-			if (piece.getPosition().equals(position)) {
-				pieceAtPosition = piece;
-				break;
-			}
+		int square = Board.square(position);
+		if (!board.isOccupied(square)) {
+			return null;
 		}
-		return pieceAtPosition;
+		return pieceViews[square];
 	}
 
 	public void setPieceOnBoard(ChessPiece piece) {
 		if (piece != null) {
-			piecesOnBoard.add(piece);
+			placeView(piece);
+			board.put(Board.piece(getColor(piece.getOwner()), piece.getType()),
+					Board.square(piece.getPosition()));
 		}
 	}
 
 	public void removePieceFromBoard(ChessPiece piece) {
-		if (piece != null) {
-			piecesOnBoard.remove(piece);
+		if (piece != null && removeView(piece)) {
+			board.remove(Board.square(piece.getPosition()));
 		}
 	}
 
@@ -112,8 +193,76 @@ public class Model extends java.util.Observable implements Observer {
 		if (piece == null) {
 			return;
 		} else {
-			piecesOnBoard.remove(piece);
+			removePieceFromBoard(piece);
+		}
+	}
+
+	// the view helpers below only update the ChessPiece objects, move and
+	// undo leave the bitboards to Board.makeMove and Board.unmakeMove
+	private void placeView(ChessPiece piece) {
+		piecesOnBoard.add(piece);
+		pieceViews[Board.square(piece.getPosition())] = piece;
+	}
+
+	private boolean removeView(ChessPiece piece) {
+		piecesOnBoard.remove(piece);
+		int square = Board.square(piece.getPosition());
+		if (pieceViews[square] == piece) {
+			pieceViews[square] = null;
+			return true;
+		}
+		return false;
+	}
+
+	private void moveView(ChessPiece piece, ChessPosition to) {
+		pieceViews[Board.square(piece.getPosition())] = null;
+		pieceViews[Board.square(to)] = piece;
+		piece.setPosition(to);
+	}
+
+	private int getCastlingRights() {
+		int rights = 0;
+		for (int color = Board.WHITE; color <= Board.BLACK; color++) {
+			int rank = color == Board.WHITE ? 0 : 7;
+			ChessPiece king = pieceViews[Board.square(4, rank)];
+			if (king == null || !king.isKing() || ((King) king).isMoved()) {
+				continue;
+			}
+			ChessPiece rook = pieceViews[Board.square(7, rank)];
+			if (rook != null && rook.isRook() && !((Rook) rook).isMoved()) {
+				rights |= color == Board.WHITE ? Board.WHITE_SHORT
+						: Board.BLACK_SHORT;
+			}
+			rook = pieceViews[Board.square(0, rank)];
+			if (rook != null && rook.isRook() && !((Rook) rook).isMoved()) {
+				rights |= color == Board.WHITE ? Board.WHITE_LONG
+						: Board.BLACK_LONG;
+			}
+		}
+		return rights;
+	}
+
+	Board getBoard() {
+		return board;
+	}
+
+	public String getStartFen() {
+		return startFen;
+	}
+
+	public String getFen() {
+		return Fen.toFen(board);
+	}
+
+	public long getHashKey() {
+		return board.getKey();
+	}
+
+	public int getColor(ChessPlayer player) {
+		if (player == player1) {
+			return Board.WHITE;
 		}
+		return Board.BLACK;
 	}
 
 	public ArrayList<ChessPiece> getPiecesOffBoard() {
@@ -128,17 +277,6 @@ public class Model extends java.util.Observable implements Observer {
 		piecesOffBoard.remove(piece);
 	}
 
-	private King getKing(ChessPlayer owner) {
-		King king = null;
-		for (ChessPiece piece : piecesOnBoard) {
-			if (piece.isKing() && piece.getOwner().equals(owner)) {
-				king = (King) piece;
-				break;
-			}
-		}
-		return king;
-	}
-
 	public ArrayList<ChessMove> getLog() {
 		return log;
 	}
@@ -155,138 +293,91 @@ public class Model extends java.util.Observable implements Observer {
 		return log.size();
 	}
 
-	private ArrayList<ChessPosition> getLegalDestinationsOnBoard(
-			ChessPiece piece) {
-		ChessPosition position = piece.getPosition();
-		ArrayList<ChessPosition> possibleLegalDestinations = piece
-				.getLegalDestinations();
-		ArrayList<ChessPosition> legalDestinations = new ArrayList<ChessPosition>();
-		for (ChessPosition destination : possibleLegalDestinations) {
-			try {
-				if (position.equals(destination)) {
-					// do not add this move to the legal moves list
-				} else if (piece.isPathBlocked(destination)) {
-					// do not add this move
-				} else if (piece.isKing()
-						&& Math.abs(position.getX() - destination.getX()) == 2) {
-					// Castling case
-					King king = (King) piece;
-					// check if the king can castle
-					ChessPosition corner1 = new ChessPosition(0,
-							position.getY());
-					ChessPiece rook1 = this.getPieceOnBoard(corner1);
-					ChessPosition corner2 = new ChessPosition(7,
-							position.getY());
-					ChessPiece rook2 = this.getPieceOnBoard(corner2);
-					if (rook1 != null
-							&& rook1.isRook()
-							&& !((Rook) rook1).isMoved()
-							&& !king.isPathBlocked(new ChessPosition(0,
-									position.getY()))) {
-						ChessPosition castle1 = new ChessPosition(2,
-								position.getY());
-						legalDestinations.add(castle1);
-					}
-					if (rook2 != null
-							&& rook2.isRook()
-							&& !((Rook) rook2).isMoved()
-							&& !king.isPathBlocked(new ChessPosition(7,
-									position.getY()))) {
-						ChessPosition castle2 = new ChessPosition(6,
-								position.getY());
-						legalDestinations.add(castle2);
-					}
-				} else if (piece.getOwner() != (getPieceOnBoard(destination)
-						.getOwner())) {
-					// You can't take your own pieces.
-					legalDestinations.add(destination);
-					// if getOwner == null, this throws a null pointer
-					// exception
+	public ArrayList<ChessMove> getUnCheckedMoves(ChessPiece piece) {
+		ArrayList<ChessMove> moves = new ArrayList<ChessMove>();
+		int from = Board.square(piece.getPosition());
+		int color = getColor(piece.getOwner());
+		if (color == board.getSideToMove()) {
+			int count = getLegalMoveCount();
+			for (int i = 0; i < count; i++) {
+				if (Move.getFrom(legalMoves[i]) == from) {
+					moves.add(toChessMove(legalMoves[i]));
 				}
-			} catch (NullPointerException e) {
-				// if there is no piece belonging to anyone at the
-				// test position this will execute
-				legalDestinations.add(destination);
 			}
+			return moves;
 		}
-		return legalDestinations;
-	}
-
-	private ArrayList<ChessMove> getLegalMoves(ChessPiece piece) {
-		ChessPosition from = piece.getPosition();
-		ArrayList<ChessPosition> legalDestinations = getLegalDestinationsOnBoard(piece);
-		ArrayList<ChessMove> legalMoves = new ArrayList<ChessMove>();
-		for (ChessPosition destination : legalDestinations) {
-			if (piece.isKing()
-					&& Math.abs(from.getX() - destination.getX()) == 2) {
-				// this is a castling move;
-				if ((destination.getX() - from.getX()) < 0) {
-					legalMoves.add(new ChessMove(piece, from,
-							ChessMove.MoveType.LONG_CASTLE, destination,
-							getPieceOnBoard(destination)));
-				} else {
-					legalMoves.add(new ChessMove(piece, from,
-							ChessMove.MoveType.SHORT_CASTLE, destination,
-							getPieceOnBoard(destination)));
+		int count = board.generateMoves(color, moveBuffer, 0);
+		for (int i = 0; i < count; i++) {
+			int move = moveBuffer[i];
+			if (Move.getFrom(move) == from && board.isLegal(move)) {
+				moves.add(toChessMove(move));
+			}
+		}
+		return moves;
+	}
+
+	public int getExchangeValue(ChessMove move) {
+		// centipawns the move wins, or loses, once the exchange on its
+		// destination square is played out
+		return See.evaluate(board, move.getPacked(), exchangeGains);
+	}
+
+	public ArrayList<ChessPiece> getHangingPieces() {
+		// pieces of either side that the other side can win material by
+		// capturing, judged by static exchange evaluation alone
+		ArrayList<ChessPiece> hanging = new ArrayList<ChessPiece>();
+		long found = 0;
+		for (int color = Board.WHITE; color <= Board.BLACK; color++) {
+			int count = board.generateCaptures(color, moveBuffer, 0);
+			for (int i = 0; i < count; i++) {
+				int move = moveBuffer[i];
+				if (!Move.isCapture(move)) {
+					continue;
 				}
-			} else if (piece.isPawn()
-					&& Math.abs(from.getX() - destination.getX()) == 1
-					&& getPieceOnBoard(destination) == null) {
-				// this is en passant
-				if (piece.getOwner().equals(getPlayer1())) {
-					legalMoves.add(new ChessMove(piece, from,
-							ChessMove.MoveType.EN_PASSANT, destination,
-							getPieceOnBoard(new ChessPosition(destination
-									.getX(), destination.getY() - 1))));
-				} else {
-					legalMoves.add(new ChessMove(piece, from,
-							ChessMove.MoveType.EN_PASSANT, destination,
-							getPieceOnBoard(new ChessPosition(destination
-									.getX(), destination.getY() + 1))));
+				int victim = Move.getTo(move);
+				if (Move.getType(move) == Move.EN_PASSANT) {
+					victim = Board.square(Board.file(victim),
+							Board.rank(Move.getFrom(move)));
+				}
+				if ((found & (1L << victim)) == 0
+						&& See.evaluate(board, move, exchangeGains) > 0 && board.isLegal(move)) {
+					found |= 1L << victim;
+					hanging.add(pieceViews[victim]);
 				}
-
-			} else {
-				legalMoves.add(new ChessMove(piece, from, destination,
-						getPieceOnBoard(destination)));
 			}
 		}
-		return legalMoves;
-	}
-
-	private ArrayList<ChessMove> getChecks(ArrayList<ChessMove> moves) {
-		ArrayList<ChessMove> checks = new ArrayList<ChessMove>();
-		for (ChessMove move : moves) {
-			// set up the conditions
-			ChessPlayer owner = move.getPiece().getOwner();
-			King king = getKing(owner);
-			removePieceFromBoard(move.getCaptured());
-			move.getPiece().setPosition(move.getTo());
-			// get the enemy pieces on the new board
-			ArrayList<ChessPiece> enemyPieces = getPiecesOnBoard(owner);
-			// test check
-			for (ChessPiece enemyPiece : enemyPieces) {
-				ArrayList<ChessMove> enemyMoves = getLegalMoves(enemyPiece);
-				for (ChessMove enemyMove : enemyMoves) {
-					if (enemyMove.getCaptured() != null
-							&& enemyMove.getCaptured().equals(king)) {
-						// this is a check, the original move puts the king into
-						// check
-						checks.add(move);
-					}
+		return hanging;
+	}
+
+	int getLegalMoveCount() {
+		if (legalMoveCount == -1 || legalMovesKey != board.getKey()) {
+			int count = board.generateMoves(moveBuffer, 0);
+			legalMoveCount = 0;
+			for (int i = 0; i < count; i++) {
+				if (board.isLegal(moveBuffer[i])) {
+					legalMoves[legalMoveCount++] = moveBuffer[i];
 				}
 			}
-			// restore the board
-			setPieceOnBoard(move.getCaptured());
-			move.getPiece().setPosition(move.getFrom());
+			legalMovesKey = board.getKey();
 		}
-		return checks;
+		return legalMoveCount;
 	}
 
-	public ArrayList<ChessMove> getUnCheckedMoves(ChessPiece piece) {
-		ArrayList<ChessMove> movesWithChecks = getLegalMoves(piece);
-		ArrayList<ChessMove> checks = getChecks(movesWithChecks);
-		movesWithChecks.removeAll(checks);
-		return movesWithChecks; // return moves without checks
+	int getLegalMove(int index) {
+		return legalMoves[index];
+	}
+
+	ChessMove toChessMove(int move) {
+		int from = Move.getFrom(move);
+		int to = Move.getTo(move);
+		int capturedSquare = to;
+		if (Move.getType(move) == Move.EN_PASSANT) {
+			capturedSquare = Board.square(Board.file(to), Board.rank(from));
+		}
+		return new ChessMove(pieceViews[from], new ChessPosition(
+				Board.file(from), Board.rank(from)), Move.getMoveType(move),
+				new ChessPosition(Board.file(to), Board.rank(to)),
+				pieceViews[capturedSquare], move);
 	}
 
 	public ArrayList<ChessMove> getTurnEnforcedMoves(ChessPiece piece) {
@@ -303,91 +394,89 @@ public class Model extends java.util.Observable implements Observer {
 		ArrayList<ChessMove> turnEnforcedMoves = getTurnEnforcedMoves(move
 				.getPiece());
 		for (ChessMove unCheckedMove : turnEnforcedMoves) {
-			ChessPosition to = unCheckedMove.getTo();
-			ChessPiece capture = unCheckedMove.getCaptured();
-			if (move.getTo().equals(to)) {
-				ChessPiece piece = unCheckedMove.getPiece();
-				if (piece.isKing()) {
-					King king = (King) piece;
-					try {
-						removePieceFromBoard(capture);
-						if (capture != null) {
-							setPieceOffBoard(capture);
-						}
-					} catch (NullPointerException e) {
-						// no captured piece
-					}
-					king.setPosition(to);
-					// castling
-					Rook rook;
-					ChessMove rookMove;
-					if (unCheckedMove.getMoveType().equals(
-							ChessMove.MoveType.LONG_CASTLE)) {
-						rook = (Rook) getPieceOnBoard(new ChessPosition(0, king
-								.getPosition().getY()));
-						rookMove = new ChessMove(
-								rook,
-								new ChessPosition(0, king.getPosition().getY()),
-								ChessMove.MoveType.LONG_CASTLE,
-								new ChessPosition(3, king.getPosition().getY()),
-								null);
-						rook.setPosition(rookMove.getTo());
-						rook.setFirstMove(rookMove);
-					} else if (unCheckedMove.getMoveType().equals(
-							ChessMove.MoveType.SHORT_CASTLE)) {
-						rook = (Rook) getPieceOnBoard(new ChessPosition(7, king
-								.getPosition().getY()));
-						rookMove = new ChessMove(
-								rook,
-								new ChessPosition(7, king.getPosition().getY()),
-								ChessMove.MoveType.SHORT_CASTLE,
-								new ChessPosition(5, king.getPosition().getY()),
-								null);
-						rook.setPosition(rookMove.getTo());
-						rook.setFirstMove(rookMove);
-					}
-					if (king.getFirstMove() == null) {
-						king.setFirstMove(unCheckedMove);
-					}
-					log.add(unCheckedMove);
-					invertPlayerTurn();
-					setChanged();
-					notifyObservers();
-					return;
-				} else if (piece.isRook()) {
-					if (((Rook) piece).getFirstMove() == null) {
-						((Rook) piece).setFirstMove(unCheckedMove);
-					}
-				} else if (piece.isPawn()) {
-					if (((Pawn) piece).getFirstMove() == null) {
-						((Pawn) piece).setFirstMove(unCheckedMove);
-					}
-				}
-				try {
-					removePieceFromBoard(capture);
-					if (capture != null) {
-						setPieceOffBoard(capture);
-					}
-				} catch (NullPointerException e) {
-					// no captured piece
-				}
-				piece.setPosition(to);
-				invertPlayerTurn();
-				if (piece.isPawn() && ((Pawn) piece).isPromotionCondition()) {
-					removePieceFromBoard(piece);
-					setPieceOnBoard(new Queen(piece.getOwner(), this, to));
-					unCheckedMove.setMoveType(ChessMove.MoveType.PROMOTED);
-				}
-				log.add(unCheckedMove);
-
-				setChanged();
-				notifyObservers();
+			if (move.getTo().equals(unCheckedMove.getTo())
+					&& (!unCheckedMove.getMoveType().equals(
+							ChessMove.MoveType.PROMOTED) || move
+							.getPromotion() == unCheckedMove.getPromotion())) {
+				move(unCheckedMove.getPacked());
 				return;
 			}
 		}
 		throw new IllegalMove(move.getPiece(), move.getFrom(), move.getTo());
 	}
 
+	void move(int move) {
+		// the packed move must be legal in the current position
+		ChessMove unCheckedMove = toChessMove(move);
+		board.makeMove(move);
+		legalMoveCount = -1;
+		status = null;
+		ChessPiece piece = unCheckedMove.getPiece();
+		ChessPiece capture = unCheckedMove.getCaptured();
+		ChessPosition to = unCheckedMove.getTo();
+		if (capture != null) {
+			removeView(capture);
+			setPieceOffBoard(capture);
+		}
+		moveView(piece, to);
+		// castling
+		if (unCheckedMove.getMoveType().equals(
+				ChessMove.MoveType.LONG_CASTLE)) {
+			moveRookView(unCheckedMove, 0, 3);
+		} else if (unCheckedMove.getMoveType().equals(
+				ChessMove.MoveType.SHORT_CASTLE)) {
+			moveRookView(unCheckedMove, 7, 5);
+		}
+		if (piece.isKing()) {
+			if (((King) piece).getFirstMove() == null) {
+				((King) piece).setFirstMove(unCheckedMove);
+			}
+		} else if (piece.isRook()) {
+			if (((Rook) piece).getFirstMove() == null) {
+				((Rook) piece).setFirstMove(unCheckedMove);
+			}
+		} else if (piece.isPawn()) {
+			if (((Pawn) piece).getFirstMove() == null) {
+				((Pawn) piece).setFirstMove(unCheckedMove);
+			}
+		}
+		if (unCheckedMove.getMoveType().equals(
+				ChessMove.MoveType.PROMOTED)) {
+			removeView(piece);
+			placeView(createPromotedPiece(piece.getOwner(), to,
+					unCheckedMove.getPromotion()));
+		}
+		log.add(unCheckedMove);
+
+		notifyView(null);
+	}
+
+	private ChessPiece createPromotedPiece(ChessPlayer owner,
+			ChessPosition position, int type) {
+		switch (type) {
+		case Board.KNIGHT:
+			return new Knight(owner, this, position);
+		case Board.BISHOP:
+			return new Bishop(owner, this, position);
+		case Board.ROOK:
+			Rook rook = new Rook(owner, this, position);
+			// a promoted rook can never castle
+			rook.setFirstMove(new ChessMove(rook, position, position));
+			return rook;
+		default:
+			return new Queen(owner, this, position);
+		}
+	}
+
+	private void moveRookView(ChessMove kingMove, int fromX, int toX) {
+		int y = kingMove.getTo().getY();
+		Rook rook = (Rook) pieceViews[Board.square(fromX, y)];
+		ChessMove rookMove = new ChessMove(rook, rook.getPosition(),
+				kingMove.getMoveType(), new ChessPosition(toX, y), null);
+		moveView(rook, rookMove.getTo());
+		rook.setFirstMove(rookMove);
+	}
+
 	public void getHighlightPositions(ChessPiece piece) {
 		ArrayList<ChessMove> turnEnforced = getTurnEnforcedMoves(piece);
 		if (areMovesHighlighted) {
@@ -396,8 +485,7 @@ public class Model extends java.util.Observable implements Observer {
 				highlightSquares[pos.getX()][pos.getY()] = true;
 			}
 		}
-		setChanged();
-		notifyObservers(highlightSquares);
+		notifyView(highlightSquares);
 	}
 
 	public void resetHighlightedPositions() {
@@ -406,32 +494,31 @@ public class Model extends java.util.Observable implements Observer {
 				highlightSquares[j][i] = false;
 			}
 		}
-		setChanged();
-		notifyObservers(highlightSquares);
+		notifyView(highlightSquares);
 	}
 
 	public void undo() {
 		ChessMove lastMove = getLog(-1);
+		board.unmakeMove();
+		legalMoveCount = -1;
+		status = null;
 		ChessPosition destination = lastMove.getTo();
 		// undo castling
-		ChessPosition rookPosition;
 		Rook rook;
-		ChessPosition currentPosition = destination;
+		int y = destination.getY();
 		if (lastMove.getMoveType().equals(ChessMove.MoveType.LONG_CASTLE)) {
-			rookPosition = new ChessPosition(3, currentPosition.getY());
-			rook = (Rook) getPieceOnBoard(rookPosition);
+			rook = (Rook) pieceViews[Board.square(3, y)];
 			// reset the Rook, king is done below
-			rook.setPosition(new ChessPosition(0, currentPosition.getY()));
+			moveView(rook, new ChessPosition(0, y));
 			rook.setFirstMove(null);
 		} else if (lastMove.getMoveType().equals(
 				ChessMove.MoveType.SHORT_CASTLE)) {
-			rookPosition = new ChessPosition(5, currentPosition.getY());
-			rook = (Rook) getPieceOnBoard(rookPosition);
-			rook.setPosition(new ChessPosition(7, currentPosition.getY()));
+			rook = (Rook) pieceViews[Board.square(5, y)];
+			moveView(rook, new ChessPosition(7, y));
 			rook.setFirstMove(null);
 		} else if (lastMove.getMoveType().equals(ChessMove.MoveType.PROMOTED)) {
-			removePieceFromBoard(destination);
-			setPieceOnBoard(lastMove.getPiece());
+			removeView(pieceViews[Board.square(destination)]);
+			placeView(lastMove.getPiece());
 		}
 		// handle piece specific undo actions
 		King king;
@@ -454,15 +541,13 @@ public class Model extends java.util.Observable implements Observer {
 				pawn.setFirstMove(null);
 			}
 		}
-		lastMove.getPiece().setPosition(lastMove.getFrom());
+		moveView(lastMove.getPiece(), lastMove.getFrom());
 		if (lastMove.getCaptured() != null) {
-			setPieceOnBoard(lastMove.getCaptured());
+			placeView(lastMove.getCaptured());
 			removePieceFromOffBoard(lastMove.getCaptured());
 		}
 		getLog().remove(log.size() - 1);
-		invertPlayerTurn();
-		setChanged();
-		notifyObservers();
+		notifyView(null);
 	}
 
 	public ChessPlayer getPlayer1() {
@@ -474,11 +559,11 @@ public class Model extends java.util.Observable implements Observer {
 	}
 
 	public boolean isPlayerTurn() {
-		return isPlayerTurn;
+		return board.getSideToMove() == Board.WHITE;
 	}
 
 	public void invertPlayerTurn() {
-		this.isPlayerTurn = !isPlayerTurn;
+		board.setSideToMove(board.getSideToMove() ^ 1);
 	}
 
 	public void setHighlightMoves(boolean b) {
@@ -509,19 +594,34 @@ class ChessMove {
 		MOVE, LONG_CASTLE, SHORT_CASTLE, EN_PASSANT, PROMOTED
 	};
 
+	private static final String[] PROMOTION_NAMES = { "pawn", "knight",
+			"bishop", "rook", "queen", "king" };
+
 	private MoveType type;
 	private ChessPiece piece;
 	private ChessPosition from;
 	private ChessPosition to;
 	private ChessPiece captured;
+	// the piece type a pawn promotes to
+	private int promotion = Board.QUEEN;
+	private int packed;
 
 	public ChessMove(ChessPiece piece, ChessPosition from, MoveType type,
-			ChessPosition to, ChessPiece captured) {
+			ChessPosition to, ChessPiece captured, int packed) {
 		this.piece = piece;
 		this.from = from;
 		this.type = type;
 		this.to = to;
 		this.captured = captured;
+		this.packed = packed;
+		if (type == MoveType.PROMOTED) {
+			this.promotion = Move.getPromotion(packed);
+		}
+	}
+
+	public ChessMove(ChessPiece piece, ChessPosition from, MoveType type,
+			ChessPosition to, ChessPiece captured) {
+		this(piece, from, type, to, captured, Move.NONE);
 	}
 
 	public ChessMove(ChessPiece piece, ChessPosition from, ChessPosition to,
@@ -533,6 +633,12 @@ class ChessMove {
 		this(piece, from, ChessMove.MoveType.MOVE, to, null);
 	}
 
+	public ChessMove(ChessPiece piece, ChessPosition from, ChessPosition to,
+			int promotion) {
+		this(piece, from, to);
+		this.promotion = promotion;
+	}
+
 	public ChessPiece getPiece() {
 		return piece;
 	}
@@ -582,6 +688,9 @@ class ChessMove {
 			result += " capturing " + captured.getOwner().getName() + "'s "
 					+ captured.toString();
 		}
+		if (type == MoveType.PROMOTED) {
+			result += " becoming a " + PROMOTION_NAMES[promotion];
+		}
 		return result;
 	}
 
@@ -589,6 +698,14 @@ class ChessMove {
 		return type;
 	}
 
+	public int getPacked() {
+		return packed;
+	}
+
+	public int getPromotion() {
+		return promotion;
+	}
+
 	public void setMoveType(MoveType type) {
 		this.type = type;
 	}
@@ -631,9 +748,14 @@ class ChessPosition {
 		ChessPosition p = (ChessPosition) o;
 		return ((p.getX() == x) && (p.getY() == y));
 	}
+
+	@Override
+	public int hashCode() {
+		return y * 8 + x;
+	}
 }
 
-abstract class ChessPiece extends java.util.Observable {
+abstract class ChessPiece {
 	protected ChessPlayer owner;
 	protected Model game;
 	protected ChessPosition position;
@@ -644,37 +766,27 @@ abstract class ChessPiece extends java.util.Observable {
 		this.owner = owner;
 		this.game = game;
 		this.position = init_position;
-		addObserver(game);
-
 	}
 
 	public abstract ArrayList<ChessPosition> getLegalDestinations();
 
+	public abstract int getType();
+
 	protected boolean isPathBlocked(ChessPosition destination) {
-		int xChange = destination.getX() - getPosition().getX();
-		int yChange = destination.getY() - getPosition().getY();
-		int testX = getPosition().getX();
-		int testY = getPosition().getY();
-		for (int i = 0; i < Math.max(Math.abs(xChange), Math.abs(yChange)) - 1; i++) {
-			// Loop over the spaces that the piece will travel, excluding the
-			// last space
-			try {
-				// Add or subtract one (depending on the direction of xChange)
-				testX += xChange / Math.abs(xChange);
-			} catch (ArithmeticException e) {
-				// If xChange is zero, leave testX as it is.
-			}
-			try {
-				// Add or subtract one (depending on the direction of yChange)
-				testY += yChange / Math.abs(yChange);
-			} catch (ArithmeticException e) {
-				// If yChange is zero, leave testY as it is.
-			}
-			if (game.getPieceOnBoard(new ChessPosition(testX, testY)) != null) {
-				return true;
-			}
+		long path = Attacks.between(Board.square(getPosition()),
+				Board.square(destination));
+		return (path & game.getBoard().getOccupied()) != 0;
+	}
+
+	protected static ArrayList<ChessPosition> toPositions(long squares) {
+		ArrayList<ChessPosition> positions = new ArrayList<ChessPosition>();
+		while (squares != 0) {
+			int square = Long.numberOfTrailingZeros(squares);
+			positions.add(new ChessPosition(Board.file(square), Board
+					.rank(square)));
+			squares &= squares - 1;
 		}
-		return false;
+		return positions;
 	}
 
 	public boolean isRook() {
@@ -735,6 +847,11 @@ class Rook extends ChessPiece {
 		return true;
 	}
 
+	@Override
+	public int getType() {
+		return Board.ROOK;
+	}
+
 	public boolean isMoved() {
 		if (firstMove == null) {
 			return false;
@@ -757,20 +874,8 @@ class Rook extends ChessPiece {
 
 	@Override
 	public ArrayList<ChessPosition> getLegalDestinations() {
-		ArrayList<ChessPosition> destinations = new ArrayList<ChessPosition>();
-		int x = position.getX();
-		int y = position.getY();
-		for (int i = 0; i < 8; i++) {
-			if (i != x) {
-				ChessPosition destination = new ChessPosition(i, y);
-				destinations.add(destination);
-			}
-			if (i != y) {
-				ChessPosition destination = new ChessPosition(x, i);
-				destinations.add(destination);
-			}
-		}
-		return destinations;
+		return toPositions(Attacks.rook(Board.square(position), game
+				.getBoard().getOccupied()));
 	}
 }
 
@@ -789,6 +894,11 @@ class Bishop extends ChessPiece {
 		return true;
 	}
 
+	@Override
+	public int getType() {
+		return Board.BISHOP;
+	}
+
 	@Override
 	public String toString() {
 		return "bishop";
@@ -796,20 +906,8 @@ class Bishop extends ChessPiece {
 
 	@Override
 	public ArrayList<ChessPosition> getLegalDestinations() {
-		ArrayList<ChessPosition> destinations = new ArrayList<ChessPosition>();
-		int x = position.getX();
-		int y = position.getY();
-		for (int i = 0; i < 8; i++) {
-			for (int j = 0; j < 8; j++) {
-				int xChange = Math.abs(i - x);
-				int yChange = Math.abs(j - y);
-				if (xChange == yChange) {
-					ChessPosition destination = new ChessPosition(i, j);
-					destinations.add(destination);
-				}
-			}
-		}
-		return destinations;
+		return toPositions(Attacks.bishop(Board.square(position), game
+				.getBoard().getOccupied()));
 	}
 }
 
@@ -833,6 +931,11 @@ class Knight extends ChessPiece {
 		return true;
 	}
 
+	@Override
+	public int getType() {
+		return Board.KNIGHT;
+	}
+
 	@Override
 	public String toString() {
 		return "knight";
@@ -840,22 +943,7 @@ class Knight extends ChessPiece {
 
 	@Override
 	public ArrayList<ChessPosition> getLegalDestinations() {
-		ArrayList<ChessPosition> destinations = new ArrayList<ChessPosition>();
-		int[] xChanges = { -2, -1, -2, -1, 2, 1, 2, 1 };
-		int[] yChanges = { -1, -2, 1, 2, -1, -2, 1, 2 };
-		int x = position.getX();
-		int y = position.getY();
-		for (int i = 0; i < 8; i++) {
-			try {
-				ChessPosition destination = new ChessPosition(x + xChanges[i],
-						y + yChanges[i]);
-				destinations.add(destination);
-			} catch (IllegalArgumentException e) {
-				// if the piece is on the edge of the board, this will happen,
-				// do not add this move to the list of possible moves.
-			}
-		}
-		return destinations;
+		return toPositions(Attacks.knight(Board.square(position)));
 	}
 }
 
@@ -874,6 +962,11 @@ class Queen extends ChessPiece {
 		return true;
 	}
 
+	@Override
+	public int getType() {
+		return Board.QUEEN;
+	}
+
 	@Override
 	public String toString() {
 		return "queen";
@@ -881,32 +974,8 @@ class Queen extends ChessPiece {
 
 	@Override
 	public ArrayList<ChessPosition> getLegalDestinations() {
-		ArrayList<ChessPosition> destinations = new ArrayList<ChessPosition>();
-		int x = position.getX();
-		int y = position.getY();
-		// horizontal moves
-		for (int i = 0; i < 8; i++) {
-			if (i != x) {
-				ChessPosition destination = new ChessPosition(i, y);
-				destinations.add(destination);
-			}
-			if (i != y) {
-				ChessPosition destination = new ChessPosition(x, i);
-				destinations.add(destination);
-			}
-		}
-		// diagonal moves
-		for (int i = 0; i < 8; i++) {
-			for (int j = 0; j < 8; j++) {
-				int xChange = Math.abs(i - x);
-				int yChange = Math.abs(j - y);
-				if (xChange == yChange) {
-					ChessPosition destination = new ChessPosition(i, j);
-					destinations.add(destination);
-				}
-			}
-		}
-		return destinations;
+		return toPositions(Attacks.queen(Board.square(position), game
+				.getBoard().getOccupied()));
 	}
 }
 
@@ -927,6 +996,11 @@ class King extends ChessPiece {
 		return true;
 	}
 
+	@Override
+	public int getType() {
+		return Board.KING;
+	}
+
 	public boolean isMoved() {
 		if (firstMove == null) {
 			return false;
@@ -950,26 +1024,13 @@ class King extends ChessPiece {
 	@Override
 	public ArrayList<ChessPosition> getLegalDestinations() {
 		ArrayList<ChessPosition> destinations = new ArrayList<ChessPosition>();
-		int x = position.getX();
 		int y = position.getY();
 		if (getFirstMove() == null) {
 			// castling. Possibly legal; must be verified in game method
 			destinations.add(new ChessPosition(2, y));
 			destinations.add(new ChessPosition(6, y));
 		}
-		// legal destinations
-		int[] xChanges = { -1, -1, 0, 1, 1, 1, 0, -1 };
-		int[] yChanges = { 0, 1, 1, 1, 0, -1, -1, -1 };
-		for (int i = 0; i < 8; i++) {
-			try {
-				ChessPosition destination = new ChessPosition(x + xChanges[i],
-						y + yChanges[i]);
-				destinations.add(destination);
-			} catch (IllegalArgumentException e) {
-				// if the piece is on the edge of the board, this will happen,
-				// do not add this move to the list of possible moves.
-			}
-		}
+		destinations.addAll(toPositions(Attacks.king(Board.square(position))));
 		return destinations;
 	}
 }
@@ -992,6 +1053,11 @@ class Pawn extends ChessPiece {
 		return true;
 	}
 
+	@Override
+	public int getType() {
+		return Board.PAWN;
+	}
+
 	public ChessMove getFirstMove() {
 		return firstMove;
 	}
@@ -1008,8 +1074,7 @@ class Pawn extends ChessPiece {
 	public boolean isPromotionCondition() {
 		int y = position.getY();
 		if (firstMove != null && (y == 7 || y == 0)) {
-			// this could display a dialog or something, but for now let's just
-			// replace the pawn with a queen
+			// the piece chosen is carried by the promoting ChessMove
 			return true;
 		} else {
 			return false;
@@ -0,0 +1,74 @@
+package chess;
+
+class Move {
+	// a move packed into an int:
+	// bits 0-5 from, 6-11 to, 12-14 type, 15-17 moved piece type,
+	// 18-20 captured piece type + 1 (0 if nothing), 21-23 promotion type
+	public static final int NONE = 0;
+
+	// the types line up with ChessMove.MoveType
+	public static final int MOVE = 0;
+	public static final int LONG_CASTLE = 1;
+	public static final int SHORT_CASTLE = 2;
+	public static final int EN_PASSANT = 3;
+	public static final int PROMOTED = 4;
+
+	private static final char[] PROMOTION_MARKS = { 'p', 'n', 'b', 'r', 'q',
+			'k' };
+
+	private Move() {
+	}
+
+	public static int create(int from, int to, int type, int piece,
+			int captured, int promotion) {
+		return from | (to << 6) | (type << 12) | (piece << 15)
+				| ((captured + 1) << 18) | (promotion << 21);
+	}
+
+	public static int create(int from, int to, int type, int piece,
+			int captured) {
+		return create(from, to, type, piece, captured, 0);
+	}
+
+	public static int getFrom(int move) {
+		return move & 63;
+	}
+
+	public static int getTo(int move) {
+		return (move >>> 6) & 63;
+	}
+
+	public static int getType(int move) {
+		return (move >>> 12) & 7;
+	}
+
+	public static int getPiece(int move) {
+		return (move >>> 15) & 7;
+	}
+
+	public static int getCaptured(int move) {
+		// Board.NO_PIECE if the move captures nothing
+		return ((move >>> 18) & 7) - 1;
+	}
+
+	public static int getPromotion(int move) {
+		return (move >>> 21) & 7;
+	}
+
+	public static boolean isCapture(int move) {
+		return (move & (7 << 18)) != 0;
+	}
+
+	public static ChessMove.MoveType getMoveType(int move) {
+		return ChessMove.MoveType.values()[getType(move)];
+	}
+
+	public static String toString(int move) {
+		String result = Board.squareName(getFrom(move))
+				+ Board.squareName(getTo(move));
+		if (getType(move) == PROMOTED) {
+			result += PROMOTION_MARKS[getPromotion(move)];
+		}
+		return result;
+	}
+}
@@ -0,0 +1,163 @@
+package chess;
+
+class MovePicker {
+	// hands out one node's moves best guess first, generating each batch
+	// only when the ones before it failed to cut off:
+	// the hash move, captures by MVV-LVA, the killers, then quiet moves
+	// by their history score. Moves are pseudo-legal
+	private static final int HASH = 0;
+	private static final int GENERATE_CAPTURES = 1;
+	private static final int CAPTURES = 2;
+	private static final int FIRST_KILLER = 3;
+	private static final int SECOND_KILLER = 4;
+	private static final int GENERATE_QUIETS = 5;
+	private static final int QUIETS = 6;
+	private static final int BAD_PROMOTIONS = 7;
+	private static final int DONE = 8;
+
+	private final Board board;
+	private final int[][] history;
+	private final int[] moves = new int[Board.MAX_MOVES];
+	private final int[] scores = new int[Board.MAX_MOVES];
+	private int count;
+	private int index;
+	// under-promotions wait at the end of the list until the quiets are done
+	private int badPromotions;
+	private int stage;
+	private int hashMove;
+	private int killer1;
+	private int killer2;
+	// quiescence nodes stop after the captures
+	private boolean capturesOnly;
+
+	public MovePicker(Board board, int[][] history) {
+		this.board = board;
+		this.history = history;
+	}
+
+	public void init(int hashMove, int killer1, int killer2) {
+		this.hashMove = hashMove;
+		this.killer1 = killer1;
+		this.killer2 = killer2;
+		capturesOnly = false;
+		stage = HASH;
+	}
+
+	public void initCaptures() {
+		hashMove = Move.NONE;
+		killer1 = Move.NONE;
+		killer2 = Move.NONE;
+		capturesOnly = true;
+		stage = GENERATE_CAPTURES;
+	}
+
+	public int next() {
+		while (true) {
+			switch (stage) {
+			case HASH:
+				stage = GENERATE_CAPTURES;
+				if (hashMove != Move.NONE && board.isPseudoLegal(hashMove)) {
+					return hashMove;
+				}
+				break;
+			case GENERATE_CAPTURES:
+				count = board.generateCaptures(moves, 0);
+				index = 0;
+				badPromotions = Board.MAX_MOVES;
+				for (int i = 0; i < count; i++) {
+					scores[i] = getCaptureScore(moves[i]);
+				}
+				stage = CAPTURES;
+				break;
+			case CAPTURES:
+				while (index < count) {
+					int move = pickBest();
+					if (move == hashMove) {
+						continue;
+					}
+					if (Move.getType(move) == Move.PROMOTED
+							&& Move.getPromotion(move) != Board.QUEEN
+							&& !Move.isCapture(move)) {
+						moves[--badPromotions] = move;
+						continue;
+					}
+					return move;
+				}
+				stage = capturesOnly ? DONE : FIRST_KILLER;
+				break;
+			case FIRST_KILLER:
+				stage = SECOND_KILLER;
+				if (isKiller(killer1)) {
+					return killer1;
+				}
+				break;
+			case SECOND_KILLER:
+				stage = GENERATE_QUIETS;
+				if (killer2 != killer1 && isKiller(killer2)) {
+					return killer2;
+				}
+				break;
+			case GENERATE_QUIETS:
+				count = board.generateQuiets(moves, 0);
+				index = 0;
+				int side = board.getSideToMove() * 6;
+				for (int i = 0; i < count; i++) {
+					int move = moves[i];
+					scores[i] = history[side + Move.getPiece(move)][Move
+							.getTo(move)];
+				}
+				stage = QUIETS;
+				break;
+			case QUIETS:
+				while (index < count) {
+					int move = pickBest();
+					if (move != hashMove && move != killer1 && move != killer2) {
+						return move;
+					}
+				}
+				stage = BAD_PROMOTIONS;
+				break;
+			case BAD_PROMOTIONS:
+				if (badPromotions < Board.MAX_MOVES) {
+					return moves[badPromotions++];
+				}
+				stage = DONE;
+				break;
+			default:
+				return Move.NONE;
+			}
+		}
+	}
+
+	private boolean isKiller(int move) {
+		// killers are quiet moves that cut off at this ply elsewhere
+		return move != Move.NONE && move != hashMove && !Move.isCapture(move)
+				&& Move.getType(move) != Move.PROMOTED
+				&& board.isPseudoLegal(move);
+	}
+
+	private int pickBest() {
+		// selection sort, one step per move taken
+		int best = index;
+		for (int i = index + 1; i < count; i++) {
+			if (scores[i] > scores[best]) {
+				best = i;
+			}
+		}
+		int move = moves[best];
+		moves[best] = moves[index];
+		scores[best] = scores[index];
+		moves[index] = move;
+		index++;
+		return move;
+	}
+
+	static int getCaptureScore(int move) {
+		// most valuable victim first, least valuable attacker among equals
+		int score = (Move.getCaptured(move) + 1) * 8 - Move.getPiece(move);
+		if (Move.getType(move) == Move.PROMOTED) {
+			score += Move.getPromotion(move) * 8;
+		}
+		return score;
+	}
+}
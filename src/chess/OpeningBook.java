@@ -0,0 +1,269 @@
+package chess;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+public class OpeningBook implements Closeable {
+	// a 16-byte header, then 16-byte entries in the Polyglot layout, sorted
+	// by key and then by falling weight:
+	// u64 Zobrist key, u16 move (GameLog.encode), u16 weight, u32 learn
+	public static final int MAGIC = 0x4348424B; // "CHBK"
+	public static final int VERSION = 1;
+	public static final int DEFAULT_PLIES = 20;
+	private static final int HEADER_SIZE = 16;
+	private static final int ENTRY_SIZE = 16;
+	private static final int MAX_WEIGHT = 0xFFFF;
+	// (key, move) pairs sorted in memory before they go to a run file
+	private static final int RUN_SIZE = 1 << 22;
+
+	private final MappedFile file;
+	private final long entries;
+	// probes reuse these, so one book serves one thread at a time
+	private final int[] moves = new int[Board.MAX_MOVES];
+	private long seed = 0x9E3779B97F4A7C15L;
+
+	public OpeningBook(Path path) throws IOException {
+		file = new MappedFile(path, 0);
+		if (file.size() < HEADER_SIZE || file.getInt(0) != MAGIC
+				|| file.getInt(4) != VERSION) {
+			file.close();
+			throw new IOException("Not an opening book: " + path);
+		}
+		entries = (file.size() - HEADER_SIZE) / ENTRY_SIZE;
+	}
+
+	public long getEntryCount() {
+		return entries;
+	}
+
+	public int probe(Model model) {
+		return probe(model.getBoard());
+	}
+
+	public int probe(Board board) {
+		// picks a book move at random in proportion to its weight, or
+		// Move.NONE when the position is not in the book
+		long first = lowerBound(board.getKey());
+		long total = 0;
+		long last = first;
+		while (last < entries && getKey(last) == board.getKey()) {
+			total += getWeight(last);
+			last++;
+		}
+		if (total == 0) {
+			return Move.NONE;
+		}
+		long pick = Long.remainderUnsigned(random(), total);
+		for (long i = first; i < last; i++) {
+			pick -= getWeight(i);
+			if (pick < 0) {
+				return GameLog.decode(board, getMove(i), moves);
+			}
+		}
+		return Move.NONE;
+	}
+
+	public int getBestMove(Board board) {
+		// entries are stored heaviest first
+		long first = lowerBound(board.getKey());
+		if (first == entries || getKey(first) != board.getKey()) {
+			return Move.NONE;
+		}
+		return GameLog.decode(board, getMove(first), moves);
+	}
+
+	private long lowerBound(long key) {
+		long low = 0;
+		long high = entries;
+		while (low < high) {
+			long middle = (low + high) >>> 1;
+			if (getKey(middle) < key) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private long getKey(long entry) {
+		return file.getLong(HEADER_SIZE + entry * ENTRY_SIZE);
+	}
+
+	private int getMove(long entry) {
+		return file.getShort(HEADER_SIZE + entry * ENTRY_SIZE + 8) & 0xFFFF;
+	}
+
+	private int getWeight(long entry) {
+		return file.getShort(HEADER_SIZE + entry * ENTRY_SIZE + 10) & 0xFFFF;
+	}
+
+	private long random() {
+		seed ^= seed >>> 12;
+		seed ^= seed << 25;
+		seed ^= seed >>> 27;
+		return seed * 2685821657736338717L;
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	public static long build(PgnReader reader, Path book, int plies)
+			throws IOException {
+		return build(reader, book, plies, RUN_SIZE);
+	}
+
+	static long build(PgnReader reader, Path book, int plies, int runSize)
+			throws IOException {
+		// every move of the first plies of every game scores 2 for a win,
+		// 1 for a draw or unknown result and 0 for a loss, the Polyglot way.
+		// The (key, move) pairs go through an external sort, so memory
+		// stays at one run however large the PGN
+		int[] buffer = new int[Board.MAX_MOVES];
+		try (SortedRuns runs = new SortedRuns(book, runSize)) {
+			PgnGame game;
+			while ((game = reader.next()) != null) {
+				int result = GameLog.parseResult(game.getResult());
+				try {
+					String fen = game.getTag("FEN");
+					Board board = Fen.parse(fen != null ? fen
+							: Fen.START_POSITION);
+					int count = Math.min(game.getMoveCount(), plies);
+					for (int ply = 0; ply < count; ply++) {
+						int move = San.parse(board, game.getMove(ply), buffer);
+						int weight = 1;
+						if (result == GameLog.WHITE_WINS
+								|| result == GameLog.BLACK_WINS) {
+							boolean won = (result == GameLog.WHITE_WINS) == (board
+									.getSideToMove() == Board.WHITE);
+							weight = won ? 2 : 0;
+						}
+						runs.add(board.getKey(),
+								((long) GameLog.encode(move) << 32) | weight);
+						board.makeMove(move);
+					}
+				} catch (IllegalArgumentException e) {
+					// the moves up to the bad one are still worth having
+				}
+			}
+
+			// the merge yields each position's pairs together, ordered by
+			// move, so weights are summed as they stream past
+			long written = 0;
+			long[] moves = new long[Board.MAX_MOVES];
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(book),
+							1 << 16))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(0);
+				boolean more = runs.next();
+				while (more) {
+					long key = runs.getKey();
+					int count = 0;
+					while (more && runs.getKey() == key) {
+						long value = runs.getValue();
+						if (count > 0 && (moves[count - 1] >>> 32) == (value >>> 32)) {
+							moves[count - 1] += value & 0xFFFFFFFFL;
+						} else {
+							if (count == moves.length) {
+								moves = Arrays.copyOf(moves, count * 2);
+							}
+							moves[count++] = value;
+						}
+						more = runs.next();
+					}
+					written += writePosition(out, key, moves, count);
+				}
+			}
+			return written;
+		}
+	}
+
+	private static int writePosition(DataOutputStream out, long key,
+			long[] moves, int count) throws IOException {
+		// heaviest first, weights scaled down to 16 bits if they need it
+		long max = 0;
+		for (int i = 0; i < count; i++) {
+			max = Math.max(max, moves[i] & 0xFFFFFFFFL);
+		}
+		sortByWeight(moves, 0, count);
+		int written = 0;
+		for (int i = 0; i < count; i++) {
+			long weight = moves[i] & 0xFFFFFFFFL;
+			if (weight == 0) {
+				// moves that only ever lost stay out of the book
+				continue;
+			}
+			if (max > MAX_WEIGHT) {
+				// scaling must not round a rare but sound move down to a loss
+				weight = Math.max(weight * MAX_WEIGHT / max, 1);
+			}
+			out.writeLong(key);
+			out.writeShort((int) (moves[i] >>> 32));
+			out.writeShort((int) weight);
+			out.writeInt(0);
+			written++;
+		}
+		return written;
+	}
+
+	private static void sortByWeight(long[] values, int start, int end) {
+		for (int i = start + 1; i < end; i++) {
+			long value = values[i];
+			int j = i;
+			while (j > start
+					&& (values[j - 1] & 0xFFFFFFFFL) < (value & 0xFFFFFFFFL)) {
+				values[j] = values[j - 1];
+				j--;
+			}
+			values[j] = value;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		// OpeningBook build <pgn> <book> [plies] | OpeningBook probe <book> <fen>
+		PrintStream out = System.out;
+		if ((args.length == 3 || args.length == 4) && args[0].equals("build")) {
+			int plies = args.length == 4 ? Integer.parseInt(args[3])
+					: DEFAULT_PLIES;
+			long start = System.nanoTime();
+			long entries;
+			try (PgnReader reader = new PgnReader(new InputStreamReader(
+					new FileInputStream(args[1]), StandardCharsets.ISO_8859_1))) {
+				entries = build(reader, Paths.get(args[2]), plies);
+			}
+			out.printf("wrote %d entries in %.2f s%n", entries,
+					(System.nanoTime() - start) / 1e9);
+		} else if (args.length == 3 && args[0].equals("probe")) {
+			try (OpeningBook book = new OpeningBook(Paths.get(args[1]))) {
+				Board board = Fen.parse(args[2]);
+				int iterations = 100000;
+				int move = Move.NONE;
+				long start = System.nanoTime();
+				for (int i = 0; i < iterations; i++) {
+					move = book.probe(board);
+				}
+				long elapsed = System.nanoTime() - start;
+				out.println("best " + Move.toString(book.getBestMove(board))
+						+ "  random " + Move.toString(move));
+				out.printf("%.2f us per probe%n", elapsed / 1e3 / iterations);
+			}
+		} else {
+			System.err.println("usage: OpeningBook build <pgn> <book> [plies] | OpeningBook probe <book> <fen>");
+			System.exit(2);
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package chess;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+public class ParallelPgnValidator {
+	public static final int DEFAULT_CHUNK_SIZE = 256;
+	// chunks are split down to this many games before running
+	static final int LEAF_SIZE = 16;
+
+	private final ForkJoinPool pool;
+	private final int chunkSize;
+	private final PrintStream errors;
+	private final PrintStream positions;
+
+	public ParallelPgnValidator(int threads, int chunkSize,
+			PrintStream errors, PrintStream positions) {
+		this.pool = new ForkJoinPool(threads);
+		this.chunkSize = chunkSize;
+		this.errors = errors;
+		this.positions = positions;
+	}
+
+	public int getThreadCount() {
+		return pool.getParallelism();
+	}
+
+	public PgnValidator validate(PgnReader reader) throws IOException {
+		// only a few chunks are in flight at once so memory stays bounded,
+		// and they are merged in file order so the output is too
+		PgnValidator summary = new PgnValidator(errors, positions);
+		ArrayDeque<ForkJoinTask<Chunk>> pending = new ArrayDeque<ForkJoinTask<Chunk>>();
+		long start = System.nanoTime();
+		ArrayList<PgnGame> games = new ArrayList<PgnGame>(chunkSize);
+		PgnGame game;
+		while ((game = reader.next()) != null) {
+			games.add(game);
+			if (games.size() == chunkSize) {
+				pending.add(pool.submit(new ValidateTask(games, positions != null)));
+				games = new ArrayList<PgnGame>(chunkSize);
+				while (pending.size() > 2 * pool.getParallelism()) {
+					flush(pending.poll().join(), summary);
+				}
+			}
+		}
+		if (!games.isEmpty()) {
+			pending.add(pool.submit(new ValidateTask(games, positions != null)));
+		}
+		while (!pending.isEmpty()) {
+			flush(pending.poll().join(), summary);
+		}
+		summary.addElapsed(System.nanoTime() - start);
+		return summary;
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	private void flush(Chunk chunk, PgnValidator summary) {
+		summary.merge(chunk.validator);
+		if (errors != null) {
+			errors.print(chunk.errors.toString());
+		}
+		if (positions != null) {
+			positions.print(chunk.positions.toString());
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err
+					.println("usage: ParallelPgnValidator file.pgn [threads [positions]]");
+			System.exit(2);
+		}
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (args.length > 1) {
+			threads = Integer.parseInt(args[1]);
+		}
+		PrintStream positions = null;
+		if (args.length > 2) {
+			positions = new PrintStream(new FileOutputStream(args[2]));
+		}
+		ParallelPgnValidator validator = new ParallelPgnValidator(threads,
+				DEFAULT_CHUNK_SIZE, System.err, positions);
+		PgnValidator summary;
+		try (PgnReader reader = new PgnReader(new InputStreamReader(
+				new FileInputStream(args[0]), StandardCharsets.ISO_8859_1))) {
+			summary = validator.validate(reader);
+		} finally {
+			validator.shutdown();
+			if (positions != null) {
+				positions.close();
+			}
+		}
+		System.out.print("threads " + threads + "  ");
+		summary.printSummary(System.out);
+	}
+}
+
+class Chunk {
+	// the results of a run of games, with their output held back until the
+	// chunk is merged in order
+	final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+	final ByteArrayOutputStream positions = new ByteArrayOutputStream();
+	final PgnValidator validator;
+
+	public Chunk(boolean recordPositions) {
+		validator = new PgnValidator(new PrintStream(errors),
+				recordPositions ? new PrintStream(positions) : null);
+	}
+
+	public void append(Chunk other) {
+		validator.merge(other.validator);
+		errors.write(other.errors.toByteArray(), 0, other.errors.size());
+		positions.write(other.positions.toByteArray(), 0,
+				other.positions.size());
+	}
+}
+
+class ValidateTask extends RecursiveTask<Chunk> {
+	private static final long serialVersionUID = 1L;
+
+	private final List<PgnGame> games;
+	private final boolean recordPositions;
+
+	public ValidateTask(List<PgnGame> games, boolean recordPositions) {
+		this.games = games;
+		this.recordPositions = recordPositions;
+	}
+
+	@Override
+	protected Chunk compute() {
+		if (games.size() <= ParallelPgnValidator.LEAF_SIZE) {
+			// every game runs on its own Model
+			Chunk chunk = new Chunk(recordPositions);
+			for (PgnGame game : games) {
+				chunk.validator.validate(game);
+			}
+			return chunk;
+		}
+		int middle = games.size() / 2;
+		ValidateTask right = new ValidateTask(games.subList(middle,
+				games.size()), recordPositions);
+		right.fork();
+		Chunk chunk = new ValidateTask(games.subList(0, middle),
+				recordPositions).compute();
+		chunk.append(right.join());
+		return chunk;
+	}
+}
@@ -0,0 +1,152 @@
+package chess;
+
+import java.io.PrintStream;
+
+public class ParallelSearch {
+	private final Search[] searches;
+	private final TranspositionTable table;
+	private SearchListener listener;
+	private long startTime;
+
+	public ParallelSearch(Board board, int threads, int hashMegabytes) {
+		this(board, threads, new TranspositionTable(hashMegabytes));
+	}
+
+	public ParallelSearch(Board board, int threads, TranspositionTable table) {
+		// the table may be kept from one search to the next
+		this.table = table;
+		searches = new Search[Math.max(threads, 1)];
+		for (int i = 0; i < searches.length; i++) {
+			// every thread searches its own copy of the root position
+			searches[i] = new Search(board, table);
+			searches[i].setThreadIndex(i);
+		}
+	}
+
+	public ParallelSearch(Model model, int threads) {
+		this(model.getBoard(), threads, Search.DEFAULT_HASH_SIZE);
+	}
+
+	public void setTablebase(Tablebase tablebase) {
+		for (Search search : searches) {
+			search.setTablebase(tablebase);
+		}
+	}
+
+	public void setEnabled(SearchFeature feature, boolean on) {
+		for (Search search : searches) {
+			search.setEnabled(feature, on);
+		}
+	}
+
+	public long getFeatureCount(SearchFeature feature) {
+		long count = 0;
+		for (Search search : searches) {
+			count += search.getFeatureCount(feature);
+		}
+		return count;
+	}
+
+	public void setListener(SearchListener listener) {
+		this.listener = listener;
+	}
+
+	public int getThreadCount() {
+		return searches.length;
+	}
+
+	public void stop() {
+		for (Search search : searches) {
+			search.stop();
+		}
+	}
+
+	public SearchResult search(final SearchLimits limits) {
+		startTime = System.nanoTime();
+		Thread[] helpers = new Thread[searches.length - 1];
+		final SearchLimits helperLimits = new SearchLimits();
+		for (int i = 0; i < helpers.length; i++) {
+			final Search helper = searches[i + 1];
+			helpers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					// helpers search until the main thread stops them
+					helper.search(helperLimits);
+				}
+			}, "search-" + (i + 1));
+			helpers[i].start();
+		}
+		searches[0].setListener(new SearchListener() {
+			@Override
+			public void iterationComplete(SearchResult result) {
+				if (listener != null) {
+					listener.iterationComplete(aggregate(result));
+				}
+			}
+		});
+		SearchResult result = searches[0].search(limits);
+		stop();
+		for (Thread helper : helpers) {
+			try {
+				helper.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		for (Search search : searches) {
+			// helpers that finished on their own were stopped afterwards
+			search.clearStop();
+		}
+		return aggregate(result);
+	}
+
+	private SearchResult aggregate(SearchResult result) {
+		long time = (System.nanoTime() - startTime) / 1000000;
+		return new SearchResult(result.getPrincipalVariation(),
+				result.getScore(), result.getDepth(), getNodes(), time);
+	}
+
+	public long getNodes() {
+		long nodes = 0;
+		for (Search search : searches) {
+			nodes += search.getNodes();
+		}
+		return nodes;
+	}
+
+	public long[] getThreadNodes() {
+		long[] nodes = new long[searches.length];
+		for (int i = 0; i < searches.length; i++) {
+			nodes[i] = searches[i].getNodes();
+		}
+		return nodes;
+	}
+
+	public static void main(String[] args) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		SearchLimits limits = new SearchLimits();
+		limits.setDepth(8);
+		if (args.length > 0) {
+			threads = Integer.parseInt(args[0]);
+		}
+		if (args.length > 1) {
+			limits.setDepth(Integer.parseInt(args[1]));
+		}
+		final PrintStream out = System.out;
+		ParallelSearch search = new ParallelSearch(new Model("P1", "P2"),
+				threads);
+		search.setListener(new SearchListener() {
+			@Override
+			public void iterationComplete(SearchResult result) {
+				out.println(result);
+			}
+		});
+		SearchResult result = search.search(limits);
+		long[] threadNodes = search.getThreadNodes();
+		for (int i = 0; i < threadNodes.length; i++) {
+			out.println("thread " + i + " nodes " + threadNodes[i] + " nps "
+					+ threadNodes[i] * 1000 / Math.max(result.getTime(), 1));
+		}
+		out.println("bestmove " + Move.toString(result.getBestMove()));
+	}
+}
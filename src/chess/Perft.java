@@ -0,0 +1,152 @@
+package chess;
+
+import java.io.PrintStream;
+
+public class Perft {
+	private static final int MAX_DEPTH = 64;
+
+	private final Board board;
+	// one preallocated move list per ply
+	private final int[][] moves = new int[MAX_DEPTH][Board.MAX_MOVES];
+
+	public Perft(Board board) {
+		this.board = board;
+	}
+
+	public Perft(Model model) {
+		this(model.getBoard());
+	}
+
+	public long perft(int depth) {
+		return perft(depth, 0);
+	}
+
+	private long perft(int depth, int ply) {
+		if (depth == 0) {
+			return 1;
+		}
+		int[] list = moves[ply];
+		int count = board.generateMoves(list, 0);
+		long nodes = 0;
+		for (int i = 0; i < count; i++) {
+			if (!board.isLegal(list[i])) {
+				continue;
+			}
+			if (depth == 1) {
+				nodes++;
+			} else {
+				board.makeMove(list[i]);
+				nodes += perft(depth - 1, ply + 1);
+				board.unmakeMove();
+			}
+		}
+		return nodes;
+	}
+
+	public long divide(int depth, PrintStream out) {
+		int[] list = moves[0];
+		int count = board.generateMoves(list, 0);
+		long total = 0;
+		for (int i = 0; i < count; i++) {
+			if (!board.isLegal(list[i])) {
+				continue;
+			}
+			board.makeMove(list[i]);
+			long nodes = perft(depth - 1, 1);
+			board.unmakeMove();
+			out.println(Move.toString(list[i]) + ": " + nodes);
+			total += nodes;
+		}
+		out.println();
+		out.println("Nodes searched: " + total);
+		return total;
+	}
+
+	public static void main(String[] args) {
+		int depth = 3;
+		String fen = Fen.START_POSITION;
+		if (args.length > 0) {
+			depth = Integer.parseInt(args[0]);
+		}
+		if (args.length > 1) {
+			fen = args[1];
+		}
+		new Perft(new Model("P1", "P2", fen)).divide(depth, System.out);
+	}
+}
+
+class PerftBenchmark {
+	static final String[] NAMES = { "startpos", "kiwipete",
+			"position3", "position4", "position5" };
+	static final String[] POSITIONS = {
+			Fen.START_POSITION,
+			"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+			"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+			"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+			"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8" };
+	// node counts from depth 1
+	private static final long[][] NODES = {
+			{ 20, 400, 8902, 197281, 4865609, 119060324 },
+			{ 48, 2039, 97862, 4085603, 193690690 },
+			{ 14, 191, 2812, 43238, 674624, 11030083 },
+			{ 6, 264, 9467, 422333, 15833292 },
+			{ 44, 1486, 62379, 2103487, 89941194 } };
+
+	private final int warmupIterations;
+	private final int iterations;
+
+	public PerftBenchmark(int warmupIterations, int iterations) {
+		this.warmupIterations = warmupIterations;
+		this.iterations = iterations;
+	}
+
+	public boolean run(String name, Model model, int depth, long expected,
+			PrintStream out) {
+		Perft perft = new Perft(model);
+		long nodes = 0;
+		for (int i = 0; i < warmupIterations; i++) {
+			nodes = perft.perft(depth);
+		}
+		long best = Long.MAX_VALUE;
+		long total = 0;
+		for (int i = 0; i < iterations; i++) {
+			long start = System.nanoTime();
+			nodes = perft.perft(depth);
+			long elapsed = System.nanoTime() - start;
+			best = Math.min(best, elapsed);
+			total += elapsed;
+		}
+		boolean correct = nodes == expected;
+		out.printf("%-12s depth %d nodes %12d %s  best %,12.0f nps  mean %,12.0f nps%n",
+				name, depth, nodes, correct ? "ok      " : "MISMATCH",
+				nodes / (best / 1e9), nodes / (total / 1e9 / iterations));
+		return correct;
+	}
+
+	public static void main(String[] args) {
+		int depth = 3;
+		int warmup = 2;
+		int iterations = 5;
+		if (args.length > 0) {
+			depth = Integer.parseInt(args[0]);
+		}
+		if (args.length > 1) {
+			warmup = Integer.parseInt(args[1]);
+		}
+		if (args.length > 2) {
+			iterations = Integer.parseInt(args[2]);
+		}
+		PerftBenchmark benchmark = new PerftBenchmark(warmup, iterations);
+		boolean correct = true;
+		for (int i = 0; i < POSITIONS.length; i++) {
+			if (depth > NODES[i].length) {
+				continue;
+			}
+			correct &= benchmark.run(NAMES[i], new Model("P1", "P2",
+					POSITIONS[i]), depth, NODES[i][depth - 1], System.out);
+		}
+		if (!correct) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,362 @@
+package chess;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+public class PgnReader implements Closeable {
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final Reader reader;
+	// games are read one at a time through a fixed buffer, so memory use
+	// does not grow with the size of the file
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int position;
+	private int limit;
+	private int line = 1;
+	private final StringBuilder token = new StringBuilder();
+
+	public PgnReader(Reader reader) {
+		this.reader = reader;
+	}
+
+	public PgnGame next() throws IOException {
+		PgnGame game = null;
+		int c;
+		while ((c = peek()) != -1) {
+			if (Character.isWhitespace(c)) {
+				read();
+			} else if (c == '[') {
+				if (game != null && game.getMoveCount() > 0) {
+					// a new tag section without a result ends the game
+					return game;
+				}
+				if (game == null) {
+					game = new PgnGame(line);
+				}
+				read();
+				readTag(game);
+			} else if (c == '{') {
+				skipPast('}');
+			} else if (c == ';' || c == '%') {
+				skipPast('\n');
+			} else if (c == '(') {
+				skipVariation();
+			} else if (c == ')' || c == ']' || c == '}') {
+				read();
+			} else {
+				if (game == null) {
+					game = new PgnGame(line);
+				}
+				String text = readToken();
+				if (text.equals("1-0") || text.equals("0-1")
+						|| text.equals("1/2-1/2") || text.equals("*")) {
+					game.setResult(text);
+					return game;
+				}
+				if (text.charAt(0) == '$') {
+					continue;
+				}
+				int start = 0;
+				while (start < text.length()
+						&& Character.isDigit(text.charAt(start))) {
+					start++;
+				}
+				if (start < text.length() && text.charAt(start) == '.') {
+					// a move number, possibly glued to the move
+					while (start < text.length() && text.charAt(start) == '.') {
+						start++;
+					}
+					text = text.substring(start);
+				} else if (text.charAt(0) == '.') {
+					text = text.replaceFirst("^\\.+", "");
+				}
+				if (!text.isEmpty()) {
+					game.addMove(text);
+				}
+			}
+		}
+		return game;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	private void readTag(PgnGame game) throws IOException {
+		token.setLength(0);
+		int c;
+		while ((c = peek()) != -1 && !Character.isWhitespace(c) && c != '"'
+				&& c != ']') {
+			token.append((char) read());
+		}
+		String name = token.toString();
+		while ((c = read()) != -1 && c != '"' && c != ']') {
+		}
+		if (c != '"') {
+			return;
+		}
+		token.setLength(0);
+		while ((c = read()) != -1 && c != '"') {
+			if (c == '\\') {
+				c = read();
+			}
+			if (c == '\n') {
+				break;
+			}
+			token.append((char) c);
+		}
+		game.setTag(name, token.toString());
+		while ((c = peek()) != -1 && c != ']' && c != '\n') {
+			read();
+		}
+		if (c == ']') {
+			read();
+		}
+	}
+
+	private String readToken() throws IOException {
+		token.setLength(0);
+		int c;
+		while ((c = peek()) != -1 && !Character.isWhitespace(c)
+				&& "{}()[];".indexOf(c) < 0) {
+			token.append((char) read());
+		}
+		return token.toString();
+	}
+
+	private void skipPast(char end) throws IOException {
+		int c;
+		while ((c = read()) != -1 && c != end) {
+		}
+	}
+
+	private void skipVariation() throws IOException {
+		// variations nest, and their comments may hold parentheses
+		int depth = 0;
+		int c;
+		while ((c = read()) != -1) {
+			if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				if (--depth == 0) {
+					return;
+				}
+			} else if (c == '{') {
+				skipPast('}');
+			} else if (c == ';') {
+				skipPast('\n');
+			}
+		}
+	}
+
+	private int peek() throws IOException {
+		if (position == limit) {
+			limit = reader.read(buffer, 0, buffer.length);
+			position = 0;
+			if (limit <= 0) {
+				limit = 0;
+				return -1;
+			}
+		}
+		return buffer[position];
+	}
+
+	private int read() throws IOException {
+		int c = peek();
+		if (c != -1) {
+			position++;
+			if (c == '\n') {
+				line++;
+			}
+		}
+		return c;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("usage: PgnReader file.pgn");
+			System.exit(2);
+		}
+		PgnValidator validator = new PgnValidator(System.err);
+		try (PgnReader reader = new PgnReader(new InputStreamReader(
+				new FileInputStream(args[0]), StandardCharsets.ISO_8859_1))) {
+			validator.validate(reader);
+		}
+		validator.printSummary(System.out);
+	}
+}
+
+class PgnGame {
+	private final int line;
+	private final LinkedHashMap<String, String> tags = new LinkedHashMap<String, String>();
+	private final ArrayList<String> moves = new ArrayList<String>();
+	private String result = "*";
+
+	public PgnGame(int line) {
+		this.line = line;
+	}
+
+	public int getLine() {
+		return line;
+	}
+
+	public String getTag(String name) {
+		return tags.get(name);
+	}
+
+	public void setTag(String name, String value) {
+		tags.put(name, value);
+	}
+
+	public int getMoveCount() {
+		return moves.size();
+	}
+
+	public String getMove(int index) {
+		return moves.get(index);
+	}
+
+	public void addMove(String san) {
+		moves.add(san);
+	}
+
+	public String getResult() {
+		return result;
+	}
+
+	public void setResult(String result) {
+		this.result = result;
+	}
+
+	public Model replay() {
+		// plays the game through a fresh Model, resolving every move
+		// against the legal moves of its position
+		String white = tags.containsKey("White") ? tags.get("White") : "P1";
+		String black = tags.containsKey("Black") ? tags.get("Black") : "P2";
+		String fen = tags.containsKey("FEN") ? tags.get("FEN")
+				: Fen.START_POSITION;
+		// any failure on malformed input marks this game invalid, not the
+		// whole run
+		Model model;
+		try {
+			model = new Model(white, black, fen);
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("Game at line " + line + ": "
+					+ describe(e), e);
+		}
+		int[] buffer = new int[Board.MAX_MOVES];
+		for (int i = 0; i < moves.size(); i++) {
+			try {
+				model.move(San.parse(model.getBoard(), moves.get(i), buffer));
+			} catch (RuntimeException e) {
+				throw new IllegalArgumentException("Game at line " + line
+						+ ", ply " + (i + 1) + ": " + describe(e), e);
+			}
+		}
+		return model;
+	}
+
+	private static String describe(RuntimeException e) {
+		// our own errors explain themselves, anything else is named
+		return e instanceof IllegalArgumentException ? e.getMessage() : e
+				.toString();
+	}
+}
+
+class PgnValidator {
+	private final PrintStream errors;
+	private final PrintStream positions;
+	private long games;
+	private long invalidGames;
+	private long moves;
+	// the final position keys of the valid games folded in file order, so
+	// a game missing, repeated or out of place changes it; power is 31 to
+	// the number of keys folded, for appending another validator's digest
+	private long digest;
+	private long power = 1;
+	private long elapsed;
+
+	public PgnValidator(PrintStream errors, PrintStream positions) {
+		this.errors = errors;
+		this.positions = positions;
+	}
+
+	public PgnValidator(PrintStream errors) {
+		this(errors, null);
+	}
+
+	public boolean validate(PgnGame game) {
+		games++;
+		try {
+			Model model = game.replay();
+			moves += game.getMoveCount();
+			digest = digest * 31 + model.getHashKey();
+			power *= 31;
+			if (positions != null) {
+				positions.println(game.getLine() + " " + game.getResult()
+						+ " " + Long.toHexString(model.getHashKey()) + " "
+						+ model.getFen());
+			}
+			return true;
+		} catch (IllegalArgumentException e) {
+			invalidGames++;
+			if (errors != null) {
+				errors.println(e.getMessage());
+			}
+			return false;
+		}
+	}
+
+	public void validate(PgnReader reader) throws IOException {
+		long start = System.nanoTime();
+		PgnGame game;
+		while ((game = reader.next()) != null) {
+			validate(game);
+		}
+		elapsed += System.nanoTime() - start;
+	}
+
+	public void merge(PgnValidator other) {
+		games += other.games;
+		invalidGames += other.invalidGames;
+		moves += other.moves;
+		// other's games follow this one's in the file
+		digest = digest * other.power + other.digest;
+		power *= other.power;
+	}
+
+	public void addElapsed(long nanos) {
+		elapsed += nanos;
+	}
+
+	public long getGames() {
+		return games;
+	}
+
+	public long getInvalidGames() {
+		return invalidGames;
+	}
+
+	public long getMoves() {
+		return moves;
+	}
+
+	public long getDigest() {
+		return digest;
+	}
+
+	public void printSummary(PrintStream out) {
+		double seconds = elapsed / 1e9;
+		out.printf("games %d  invalid %d  moves %d  digest %016x  time %.2f s  %,.0f games/s  %,.0f moves/s%n",
+				games, invalidGames, moves, digest, seconds, games / seconds,
+				moves / seconds);
+	}
+}
@@ -0,0 +1,224 @@
+package chess;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+public class PositionIndex implements Closeable {
+	// header, then 16-byte postings sorted by Zobrist key: the u64 key and
+	// a u64 holding the game id in the high bits and the ply in the low 16
+	public static final int MAGIC = 0x43485049; // "CHPI"
+	public static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+	private static final int ENTRY_SIZE = 16;
+	// postings sorted in memory before they go to a run file
+	private static final int RUN_SIZE = 1 << 22;
+
+	private final MappedFile file;
+	private final long entries;
+
+	public PositionIndex(Path path) throws IOException {
+		file = new MappedFile(path, 0);
+		if (file.size() < HEADER_SIZE || file.getInt(0) != MAGIC
+				|| file.getInt(4) != VERSION) {
+			file.close();
+			throw new IOException("Not a position index: " + path);
+		}
+		entries = (file.size() - HEADER_SIZE) / ENTRY_SIZE;
+	}
+
+	public long getEntryCount() {
+		return entries;
+	}
+
+	public ArrayList<Posting> find(Model model) {
+		return find(model.getHashKey());
+	}
+
+	public ArrayList<Posting> find(long key) {
+		ArrayList<Posting> postings = new ArrayList<Posting>();
+		for (long i = lowerBound(key); i < entries && getKey(i) == key; i++) {
+			long value = file.getLong(HEADER_SIZE + i * ENTRY_SIZE + 8);
+			postings.add(new Posting((int) (value >>> 16),
+					(int) (value & 0xFFFF)));
+		}
+		return postings;
+	}
+
+	public long count(long key) {
+		long first = lowerBound(key);
+		long last = first;
+		while (last < entries && getKey(last) == key) {
+			last++;
+		}
+		return last - first;
+	}
+
+	private long lowerBound(long key) {
+		long low = 0;
+		long high = entries;
+		while (low < high) {
+			long middle = (low + high) >>> 1;
+			if (getKey(middle) < key) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private long getKey(long entry) {
+		return file.getLong(HEADER_SIZE + entry * ENTRY_SIZE);
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	public static long build(Path log, Path index) throws IOException {
+		return build(log, index, RUN_SIZE);
+	}
+
+	static long build(Path log, Path index, int runSize) throws IOException {
+		// one streaming pass over the games feeds an external sort, so
+		// memory stays at one run whatever the store size
+		int[] moves = new int[Board.MAX_MOVES];
+		try (GameLogReader reader = new GameLogReader(log);
+				SortedRuns runs = new SortedRuns(index, runSize)) {
+			for (int game = 0; game < reader.getGameCount(); game++) {
+				Board board = reader.getStartBoard(game);
+				int count = reader.getPlyCount(game);
+				for (int ply = 0; ply <= count; ply++) {
+					if (ply > 0) {
+						int move = GameLog.decode(board,
+								reader.getMove(game, ply - 1), moves);
+						if (move == Move.NONE) {
+							throw new IOException("Game " + game + ", ply "
+									+ ply + ": corrupt move");
+						}
+						board.makeMove(move);
+					}
+					runs.add(board.getKey(), ((long) game << 16) | ply);
+				}
+			}
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(index),
+							1 << 16))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				while (runs.next()) {
+					out.writeLong(runs.getKey());
+					out.writeLong(runs.getValue());
+				}
+			}
+			return runs.size();
+		}
+	}
+
+	static void sort(long[] keys, long[] values, int low, int high) {
+		// quicksort on (key, value) pairs, recursing into the smaller side
+		while (high - low > 16) {
+			int middle = (low + high) >>> 1;
+			long pivotKey = keys[middle];
+			long pivotValue = values[middle];
+			int i = low;
+			int j = high;
+			while (i <= j) {
+				while (compare(keys[i], values[i], pivotKey, pivotValue) < 0) {
+					i++;
+				}
+				while (compare(keys[j], values[j], pivotKey, pivotValue) > 0) {
+					j--;
+				}
+				if (i <= j) {
+					swap(keys, values, i++, j--);
+				}
+			}
+			if (j - low < high - i) {
+				sort(keys, values, low, j);
+				low = i;
+			} else {
+				sort(keys, values, i, high);
+				high = j;
+			}
+		}
+		for (int i = low + 1; i <= high; i++) {
+			for (int j = i; j > low
+					&& compare(keys[j - 1], values[j - 1], keys[j], values[j]) > 0; j--) {
+				swap(keys, values, j - 1, j);
+			}
+		}
+	}
+
+	private static int compare(long key1, long value1, long key2, long value2) {
+		int result = Long.compare(key1, key2);
+		return result != 0 ? result : Long.compare(value1, value2);
+	}
+
+	private static void swap(long[] keys, long[] values, int i, int j) {
+		long key = keys[i];
+		keys[i] = keys[j];
+		keys[j] = key;
+		long value = values[i];
+		values[i] = values[j];
+		values[j] = value;
+	}
+
+	public static void main(String[] args) throws IOException {
+		// PositionIndex build <log> <index> | PositionIndex query <index> <fen>
+		PrintStream out = System.out;
+		if (args.length == 3 && args[0].equals("build")) {
+			long start = System.nanoTime();
+			long postings = build(Paths.get(args[1]), Paths.get(args[2]));
+			out.printf("indexed %d positions in %.2f s%n", postings,
+					(System.nanoTime() - start) / 1e9);
+		} else if (args.length == 3 && args[0].equals("query")) {
+			try (PositionIndex index = new PositionIndex(Paths.get(args[1]))) {
+				Model model = new Model("White", "Black", args[2]);
+				long start = System.nanoTime();
+				ArrayList<Posting> postings = index.find(model);
+				long elapsed = System.nanoTime() - start;
+				for (Posting posting : postings) {
+					out.println(posting);
+				}
+				out.printf("%d games in %.3f ms%n", postings.size(),
+						elapsed / 1e6);
+			}
+		} else {
+			System.err.println("usage: PositionIndex build <log> <index> | PositionIndex query <index> <fen>");
+			System.exit(2);
+		}
+	}
+}
+
+class Posting {
+	private final int game;
+	private final int ply;
+
+	public Posting(int game, int ply) {
+		this.game = game;
+		this.ply = ply;
+	}
+
+	public int getGame() {
+		return game;
+	}
+
+	public int getPly() {
+		// the number of moves played to reach the position
+		return ply;
+	}
+
+	@Override
+	public String toString() {
+		return "game " + game + " ply " + ply;
+	}
+}
@@ -0,0 +1,101 @@
+package chess;
+
+class San {
+	private static final String PIECE_MARKS = "PNBRQK";
+
+	private San() {
+	}
+
+	public static int parse(Board board, String san, int[] moves) {
+		// strips check marks and annotations, e.g. "Nbd7+!?"
+		int end = san.length();
+		while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) >= 0) {
+			end--;
+		}
+		String text = san.substring(0, end);
+		int type = -1;
+		if (text.equals("O-O") || text.equals("0-0")) {
+			type = Move.SHORT_CASTLE;
+		} else if (text.equals("O-O-O") || text.equals("0-0-0")) {
+			type = Move.LONG_CASTLE;
+		}
+
+		int piece = Board.PAWN;
+		int promotion = Board.NO_PIECE;
+		int to = Board.NO_SQUARE;
+		int fromFile = -1;
+		int fromRank = -1;
+		if (type == -1) {
+			int start = 0;
+			if (end > 0 && PIECE_MARKS.indexOf(text.charAt(0)) > 0) {
+				piece = PIECE_MARKS.indexOf(text.charAt(0));
+				start = 1;
+			}
+			if (end > 2 && PIECE_MARKS.indexOf(text.charAt(end - 1)) > 0
+					&& piece == Board.PAWN) {
+				promotion = PIECE_MARKS.indexOf(text.charAt(end - 1));
+				end--;
+				if (text.charAt(end - 1) == '=') {
+					end--;
+				}
+			}
+			if (end - start < 2) {
+				throw new IllegalArgumentException("Invalid SAN move: " + san);
+			}
+			to = square(text.charAt(end - 2), text.charAt(end - 1));
+			for (int i = start; i < end - 2; i++) {
+				char c = text.charAt(i);
+				if (c >= 'a' && c <= 'h') {
+					fromFile = c - 'a';
+				} else if (c >= '1' && c <= '8') {
+					fromRank = c - '1';
+				} else if (c != 'x' && c != ':' && c != '-') {
+					throw new IllegalArgumentException("Invalid SAN move: "
+							+ san);
+				}
+			}
+			if (to == Board.NO_SQUARE) {
+				throw new IllegalArgumentException("Invalid SAN move: " + san);
+			}
+		}
+
+		int count = board.generateMoves(moves, 0);
+		int found = Move.NONE;
+		for (int i = 0; i < count; i++) {
+			int move = moves[i];
+			if (type != -1) {
+				if (Move.getType(move) != type) {
+					continue;
+				}
+			} else {
+				int from = Move.getFrom(move);
+				boolean promoted = Move.getType(move) == Move.PROMOTED;
+				if (Move.getTo(move) != to || Move.getPiece(move) != piece
+						|| (fromFile != -1 && Board.file(from) != fromFile)
+						|| (fromRank != -1 && Board.rank(from) != fromRank)
+						|| promoted != (promotion != Board.NO_PIECE)
+						|| (promoted && Move.getPromotion(move) != promotion)) {
+					continue;
+				}
+			}
+			if (!board.isLegal(move)) {
+				continue;
+			}
+			if (found != Move.NONE) {
+				throw new IllegalArgumentException("Ambiguous SAN move: " + san);
+			}
+			found = move;
+		}
+		if (found == Move.NONE) {
+			throw new IllegalArgumentException("Illegal SAN move: " + san);
+		}
+		return found;
+	}
+
+	private static int square(char file, char rank) {
+		if (file < 'a' || file > 'h' || rank < '1' || rank > '8') {
+			return Board.NO_SQUARE;
+		}
+		return Board.square(file - 'a', rank - '1');
+	}
+}
@@ -0,0 +1,674 @@
+package chess;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+public class Search {
+	public static final int INFINITY = 32000;
+	public static final int MATE = 31000;
+	public static final int MAX_PLY = 64;
+	// scores beyond this are mates, found by the search or by a tablebase
+	public static final int MATE_BOUND = MATE - 512;
+	public static final int DEFAULT_HASH_SIZE = 16;
+
+	private static final int ASPIRATION_WINDOW = 50;
+	// history scores are halved once one passes this
+	private static final int MAX_HISTORY = 1 << 20;
+	// selective search, by remaining depth where a table is given
+	private static final int NULL_MOVE_DEPTH = 3;
+	private static final int[] RAZOR_MARGINS = { 0, 300, 450, 600 };
+	private static final int[] FUTILITY_MARGINS = { 0, 150, 300, 450 };
+	private static final int REDUCTION_DEPTH = 3;
+	// moves searched at full depth before later quiet ones are reduced
+	private static final int FULL_DEPTH_MOVES = 3;
+	// Lazy SMP helpers skip iterations in staggered patterns, so that they
+	// spread over different depths instead of searching in lockstep
+	private static final int[] SKIP_SIZE = { 1, 1, 2, 2, 2, 2, 3, 3, 3, 3,
+			3, 3, 4, 4, 4, 4, 4, 4, 4, 4 };
+	private static final int[] SKIP_PHASE = { 0, 1, 0, 1, 2, 3, 0, 1, 2, 3,
+			4, 5, 0, 1, 2, 3, 4, 5, 6, 7 };
+
+	private final Board board;
+	private final TranspositionTable table;
+	private Tablebase tablebase;
+	private final boolean[] enabled = new boolean[SearchFeature.values().length];
+	private final long[] featureCounts = new long[SearchFeature.values().length];
+	private final MovePicker[] pickers = new MovePicker[MAX_PLY];
+	// quiet moves that caused a cutoff, two per ply, and a score per
+	// piece and destination for how often they did
+	private final int[][] killers = new int[MAX_PLY][2];
+	private final int[][] history = new int[12][64];
+	private final int[][] pv = new int[MAX_PLY + 1][MAX_PLY + 1];
+	private final int[] pvLength = new int[MAX_PLY + 1];
+	private final int[] exchangeGains = new int[See.MAX_EXCHANGES];
+	private SearchListener listener;
+	private SearchLimits limits;
+	private long nodes;
+	private long startTime;
+	private int rootBestMove;
+	private int threadIndex;
+	private volatile boolean stopped;
+
+	public Search(Board board, TranspositionTable table) {
+		this.board = new Board(board);
+		this.table = table;
+		for (int i = 0; i < MAX_PLY; i++) {
+			pickers[i] = new MovePicker(this.board, history);
+		}
+		Arrays.fill(enabled, true);
+	}
+
+	public Search(Board board) {
+		this(board, new TranspositionTable(DEFAULT_HASH_SIZE));
+	}
+
+	public Search(Model model) {
+		// searches the side given by model.isPlayerTurn()
+		this(model.getBoard());
+	}
+
+	public void setListener(SearchListener listener) {
+		this.listener = listener;
+	}
+
+	public void setTablebase(Tablebase tablebase) {
+		this.tablebase = tablebase;
+	}
+
+	public void setEnabled(SearchFeature feature, boolean on) {
+		enabled[feature.ordinal()] = on;
+	}
+
+	public boolean isEnabled(SearchFeature feature) {
+		return enabled[feature.ordinal()];
+	}
+
+	public long getFeatureCount(SearchFeature feature) {
+		// since the start of the last search
+		return featureCounts[feature.ordinal()];
+	}
+
+	public void stop() {
+		stopped = true;
+	}
+
+	void clearStop() {
+		stopped = false;
+	}
+
+	public void setThreadIndex(int threadIndex) {
+		// 0 for the main thread, helpers skip depths by their index
+		this.threadIndex = threadIndex;
+	}
+
+	public long getNodes() {
+		// read without synchronization, exact once the search has returned
+		return nodes;
+	}
+
+	private boolean isSkipped(int depth) {
+		if (threadIndex == 0) {
+			return false;
+		}
+		int i = (threadIndex - 1) % SKIP_SIZE.length;
+		return ((depth + SKIP_PHASE[i]) / SKIP_SIZE[i]) % 2 != 0;
+	}
+
+	public SearchResult search(SearchLimits limits) {
+		// a stop() that arrives before the search starts still stops it
+		this.limits = limits;
+		nodes = 0;
+		Arrays.fill(featureCounts, 0);
+		startTime = System.nanoTime();
+		rootBestMove = Move.NONE;
+		table.newSearch();
+		for (int[] pair : killers) {
+			pair[0] = Move.NONE;
+			pair[1] = Move.NONE;
+		}
+		ageHistory();
+		SearchResult result = null;
+		int score = 0;
+		int maxDepth = Math.min(limits.getDepth(), MAX_PLY - 1);
+		for (int depth = 1; depth <= maxDepth; depth++) {
+			if (isSkipped(depth)) {
+				continue;
+			}
+			int delta = ASPIRATION_WINDOW;
+			int alpha = -INFINITY;
+			int beta = INFINITY;
+			if (depth >= 4) {
+				// search a narrow window around the last score, widening it
+				// whenever the score falls outside
+				alpha = Math.max(score - delta, -INFINITY);
+				beta = Math.min(score + delta, INFINITY);
+			}
+			while (true) {
+				int value = negamax(depth, alpha, beta, 0, true);
+				if (stopped) {
+					break;
+				}
+				if (value <= alpha) {
+					beta = (alpha + beta) / 2;
+					alpha = Math.max(value - delta, -INFINITY);
+				} else if (value >= beta) {
+					beta = Math.min(value + delta, INFINITY);
+				} else {
+					score = value;
+					break;
+				}
+				delta *= 2;
+			}
+			if (stopped) {
+				break;
+			}
+			result = new SearchResult(getPrincipalVariation(), score, depth,
+					nodes, getElapsed());
+			rootBestMove = result.getBestMove();
+			if (listener != null) {
+				listener.iterationComplete(result);
+			}
+			if (pvLength[0] == 0 || Math.abs(score) >= MATE_BOUND) {
+				// no legal moves, or a forced mate has been found
+				break;
+			}
+		}
+		if (result == null) {
+			// stopped before the first iteration finished
+			result = new SearchResult(getPrincipalVariation(), 0, 0, nodes,
+					getElapsed());
+		}
+		stopped = false;
+		return result;
+	}
+
+	private int negamax(int depth, int alpha, int beta, int ply,
+			boolean allowNullMove) {
+		if (depth <= 0) {
+			return quiescence(alpha, beta, ply);
+		}
+		pvLength[ply] = 0;
+		nodes++;
+		if ((nodes & 1023) == 0) {
+			checkLimits();
+		}
+		if (stopped) {
+			return 0;
+		}
+		if (ply > 0 && isDraw()) {
+			return 0;
+		}
+		if (ply > 0 && tablebase != null
+				&& Long.bitCount(board.getOccupied()) <= tablebase.getMaxPieces()) {
+			// a known result is exact, mate distances count from the root
+			int score = tablebase.probe(board);
+			if (score != Tablebase.UNKNOWN) {
+				return score > 0 ? score - ply : score < 0 ? score + ply : 0;
+			}
+		}
+		if (ply >= MAX_PLY - 1) {
+			return Evaluation.evaluate(board);
+		}
+		long key = board.getKey();
+		long entry = table.probe(key);
+		int hashMove = Move.NONE;
+		if (entry != 0) {
+			hashMove = TranspositionTable.getMove(entry);
+			// principal variation nodes search on, so the line they report
+			// is not cut short at a table hit
+			if (ply > 0 && beta - alpha == 1
+					&& TranspositionTable.getDepth(entry) >= depth) {
+				int score = fromTable(TranspositionTable.getScore(entry), ply);
+				int bound = TranspositionTable.getBound(entry);
+				if (bound == TranspositionTable.EXACT
+						|| (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+						|| (bound == TranspositionTable.UPPER_BOUND && score <= alpha)) {
+					return score;
+				}
+			}
+		}
+		// the selective techniques only apply away from the principal
+		// variation, where a null window is being searched
+		boolean inCheck = board.isInCheck();
+		boolean selective = ply > 0 && !inCheck && beta - alpha == 1;
+		int staticEval = selective ? Evaluation.evaluate(board) : 0;
+		if (selective && isEnabled(SearchFeature.RAZORING)
+				&& depth < RAZOR_MARGINS.length
+				&& staticEval + RAZOR_MARGINS[depth] < alpha) {
+			// far below alpha, only captures could still save the node
+			int value = quiescence(alpha, beta, ply);
+			if (value <= alpha) {
+				featureCounts[SearchFeature.RAZORING.ordinal()]++;
+				return value;
+			}
+		}
+		if (selective && allowNullMove && isEnabled(SearchFeature.NULL_MOVE)
+				&& depth >= NULL_MOVE_DEPTH && staticEval >= beta
+				&& hasPieces(board.getSideToMove())) {
+			// if passing still beats beta, a real move will too; with only
+			// pawns left zugzwang makes passing look better than it is
+			board.makeNullMove();
+			int value = -negamax(depth - 3 - depth / 6, -beta, -beta + 1,
+					ply + 1, false);
+			board.unmakeNullMove();
+			if (stopped) {
+				return 0;
+			}
+			if (value >= beta) {
+				featureCounts[SearchFeature.NULL_MOVE.ordinal()]++;
+				return value >= MATE_BOUND ? beta : value;
+			}
+		}
+		boolean futile = selective && isEnabled(SearchFeature.FUTILITY)
+				&& depth < FUTILITY_MARGINS.length
+				&& Math.abs(alpha) < MATE_BOUND
+				&& staticEval + FUTILITY_MARGINS[depth] <= alpha;
+
+		// try the previous iteration's best move, or the stored move, first
+		if (ply == 0 && rootBestMove != Move.NONE) {
+			hashMove = rootBestMove;
+		}
+		MovePicker picker = pickers[ply];
+		picker.init(hashMove, killers[ply][0], killers[ply][1]);
+		int originalAlpha = alpha;
+		int bestMove = Move.NONE;
+		int legal = 0;
+		int move;
+		while ((move = picker.next()) != Move.NONE) {
+			if (!board.isLegal(move)) {
+				continue;
+			}
+			legal++;
+			boolean quiet = !Move.isCapture(move)
+					&& Move.getType(move) != Move.PROMOTED;
+			board.makeMove(move);
+			boolean givesCheck = board.isInCheck();
+			if (futile && legal > 1 && quiet && !givesCheck) {
+				// a quiet move cannot make up the margin this close to the
+				// horizon
+				board.unmakeMove();
+				featureCounts[SearchFeature.FUTILITY.ordinal()]++;
+				continue;
+			}
+			int newDepth = depth - 1;
+			if (givesCheck && isEnabled(SearchFeature.CHECK_EXTENSIONS)) {
+				newDepth++;
+				featureCounts[SearchFeature.CHECK_EXTENSIONS.ordinal()]++;
+			}
+			int value;
+			if (legal == 1) {
+				value = -negamax(newDepth, -beta, -alpha, ply + 1, true);
+			} else {
+				// later moves only have to be shown worse than the best so
+				// far, which a null window does cheaply; late quiet moves
+				// are also searched less deep unless they turn out better
+				int reduction = 0;
+				if (isEnabled(SearchFeature.LATE_MOVE_REDUCTIONS)
+						&& depth >= REDUCTION_DEPTH
+						&& legal > FULL_DEPTH_MOVES && quiet && !inCheck
+						&& !givesCheck && move != killers[ply][0]
+						&& move != killers[ply][1]) {
+					reduction = legal > 2 * FULL_DEPTH_MOVES + 2 ? 2 : 1;
+					featureCounts[SearchFeature.LATE_MOVE_REDUCTIONS.ordinal()]++;
+				}
+				value = -negamax(newDepth - reduction, -alpha - 1, -alpha,
+						ply + 1, true);
+				if (value > alpha && reduction > 0) {
+					value = -negamax(newDepth, -alpha - 1, -alpha, ply + 1,
+							true);
+				}
+				if (value > alpha && value < beta) {
+					value = -negamax(newDepth, -beta, -alpha, ply + 1, true);
+				}
+			}
+			board.unmakeMove();
+			if (stopped) {
+				return 0;
+			}
+			if (value > alpha) {
+				alpha = value;
+				bestMove = move;
+				pv[ply][0] = move;
+				System.arraycopy(pv[ply + 1], 0, pv[ply], 1, pvLength[ply + 1]);
+				pvLength[ply] = pvLength[ply + 1] + 1;
+				if (value >= beta) {
+					if (!Move.isCapture(move)
+							&& Move.getType(move) != Move.PROMOTED) {
+						addCutoff(move, depth, ply);
+					}
+					break;
+				}
+			}
+		}
+		if (legal == 0) {
+			return inCheck ? -MATE + ply : 0;
+		}
+		int bound = TranspositionTable.EXACT;
+		if (alpha >= beta) {
+			bound = TranspositionTable.LOWER_BOUND;
+		} else if (alpha == originalAlpha) {
+			bound = TranspositionTable.UPPER_BOUND;
+		}
+		table.store(key, bestMove, toTable(alpha, ply), depth, bound);
+		return alpha;
+	}
+
+	private int quiescence(int alpha, int beta, int ply) {
+		// plays out captures and promotions until the position is quiet,
+		// so the evaluation never stops in the middle of an exchange
+		pvLength[ply] = 0;
+		nodes++;
+		if ((nodes & 1023) == 0) {
+			checkLimits();
+		}
+		if (stopped) {
+			return 0;
+		}
+		if (isDraw()) {
+			return 0;
+		}
+		if (ply >= MAX_PLY - 1) {
+			return Evaluation.evaluate(board);
+		}
+		// in check every evasion is tried, otherwise the side to move may
+		// stand pat on the evaluation instead of capturing
+		boolean inCheck = board.isInCheck();
+		if (!inCheck) {
+			int standPat = Evaluation.evaluate(board);
+			if (standPat >= beta) {
+				return standPat;
+			}
+			alpha = Math.max(alpha, standPat);
+		}
+		MovePicker picker = pickers[ply];
+		if (inCheck) {
+			picker.init(Move.NONE, killers[ply][0], killers[ply][1]);
+		} else {
+			picker.initCaptures();
+		}
+		int legal = 0;
+		int move;
+		while ((move = picker.next()) != Move.NONE) {
+			if (!inCheck && Move.getType(move) != Move.PROMOTED
+					&& See.evaluate(board, move, exchangeGains) < 0) {
+				// captures that lose material are left out
+				continue;
+			}
+			if (!board.isLegal(move)) {
+				continue;
+			}
+			legal++;
+			board.makeMove(move);
+			int value = -quiescence(-beta, -alpha, ply + 1);
+			board.unmakeMove();
+			if (stopped) {
+				return 0;
+			}
+			if (value > alpha) {
+				alpha = value;
+				if (value >= beta) {
+					break;
+				}
+			}
+		}
+		if (inCheck && legal == 0) {
+			return -MATE + ply;
+		}
+		return alpha;
+	}
+
+	private boolean hasPieces(int color) {
+		// anything besides pawns and the king
+		return (board.getPieces(color) & ~board.getPieces(color, Board.PAWN) & ~board
+				.getPieces(color, Board.KING)) != 0;
+	}
+
+	private boolean isDraw() {
+		// a repeated position is scored as a draw, so the engine neither
+		// walks into nor away from repetitions blindly. Neither side can
+		// mate without enough material, whatever the evaluation says
+		return board.getRepetitions() > 0 || board.getHalfmoveClock() >= 100
+				|| board.isInsufficientMaterial();
+	}
+
+	private static int toTable(int score, int ply) {
+		// mate scores are stored relative to the position, not the root
+		if (score >= MATE_BOUND) {
+			return score + ply;
+		} else if (score <= -MATE_BOUND) {
+			return score - ply;
+		}
+		return score;
+	}
+
+	private static int fromTable(int score, int ply) {
+		if (score >= MATE_BOUND) {
+			return score - ply;
+		} else if (score <= -MATE_BOUND) {
+			return score + ply;
+		}
+		return score;
+	}
+
+	private void addCutoff(int move, int depth, int ply) {
+		if (killers[ply][0] != move) {
+			killers[ply][1] = killers[ply][0];
+			killers[ply][0] = move;
+		}
+		int[] scores = history[board.getSideToMove() * 6 + Move.getPiece(move)];
+		scores[Move.getTo(move)] += depth * depth;
+		if (scores[Move.getTo(move)] > MAX_HISTORY) {
+			ageHistory();
+		}
+	}
+
+	private void ageHistory() {
+		// older cutoffs count for less, in later searches as well
+		for (int[] scores : history) {
+			for (int i = 0; i < scores.length; i++) {
+				scores[i] /= 2;
+			}
+		}
+	}
+
+	private void checkLimits() {
+		if ((limits.getMoveTime() > 0 && getElapsed() >= limits.getMoveTime())
+				|| (limits.getNodes() > 0 && nodes >= limits.getNodes())) {
+			stopped = true;
+		}
+	}
+
+	private long getElapsed() {
+		return (System.nanoTime() - startTime) / 1000000;
+	}
+
+	private int[] getPrincipalVariation() {
+		int[] line = new int[pvLength[0]];
+		System.arraycopy(pv[0], 0, line, 0, line.length);
+		return line;
+	}
+
+	public static void main(String[] args) {
+		SearchLimits limits = new SearchLimits();
+		limits.setDepth(6);
+		if (args.length > 0) {
+			limits.setDepth(Integer.parseInt(args[0]));
+		}
+		final PrintStream out = System.out;
+		Search search = new Search(new Model("P1", "P2"));
+		search.setListener(new SearchListener() {
+			@Override
+			public void iterationComplete(SearchResult result) {
+				out.println(result);
+			}
+		});
+		out.println("bestmove " + Move.toString(search.search(limits).getBestMove()));
+	}
+}
+
+interface SearchListener {
+	void iterationComplete(SearchResult result);
+}
+
+class SearchLimits {
+	private int depth = Search.MAX_PLY;
+	// set while a search runs when a ponder search turns into a timed one
+	private volatile long moveTime;
+	private long nodes;
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public void setDepth(int depth) {
+		this.depth = depth;
+	}
+
+	public long getMoveTime() {
+		// milliseconds, 0 for no limit
+		return moveTime;
+	}
+
+	public void setMoveTime(long moveTime) {
+		this.moveTime = moveTime;
+	}
+
+	public long getNodes() {
+		// 0 for no limit
+		return nodes;
+	}
+
+	public void setNodes(long nodes) {
+		this.nodes = nodes;
+	}
+}
+
+class SearchResult {
+	private final int[] principalVariation;
+	private final int score;
+	private final int depth;
+	private final long nodes;
+	private final long time;
+
+	public SearchResult(int[] principalVariation, int score, int depth,
+			long nodes, long time) {
+		this.principalVariation = principalVariation;
+		this.score = score;
+		this.depth = depth;
+		this.nodes = nodes;
+		this.time = time;
+	}
+
+	public int getBestMove() {
+		if (principalVariation.length == 0) {
+			return Move.NONE;
+		}
+		return principalVariation[0];
+	}
+
+	public int[] getPrincipalVariation() {
+		return principalVariation;
+	}
+
+	public int getScore() {
+		return score;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	public long getTime() {
+		// milliseconds
+		return time;
+	}
+
+	public long getNodesPerSecond() {
+		return nodes * 1000 / Math.max(time, 1);
+	}
+
+	@Override
+	public String toString() {
+		String result = "depth " + depth + " score " + score + " nodes "
+				+ nodes + " time " + time + " nps " + getNodesPerSecond()
+				+ " pv";
+		for (int move : principalVariation) {
+			result += " " + Move.toString(move);
+		}
+		return result;
+	}
+}
+
+class SearchBenchmark {
+	// searches the perft positions to a fixed depth with every selective
+	// technique on, with each one switched off in turn and with all off.
+	// The effective branching factor is the ratio of the nodes of the last
+	// iteration to those of the one before
+	private final int depth;
+	private long nodes;
+	private long previousNodes;
+	private long time;
+	private final long[] featureCounts = new long[SearchFeature.values().length];
+
+	public SearchBenchmark(int depth) {
+		this.depth = depth;
+	}
+
+	public void run(String name, boolean[] enabled, PrintStream out) {
+		nodes = 0;
+		previousNodes = 0;
+		time = 0;
+		Arrays.fill(featureCounts, 0);
+		for (String fen : PerftBenchmark.POSITIONS) {
+			Search search = new Search(Fen.parse(fen));
+			for (SearchFeature feature : SearchFeature.values()) {
+				search.setEnabled(feature, enabled[feature.ordinal()]);
+			}
+			final long[] iterations = new long[depth + 1];
+			search.setListener(new SearchListener() {
+				@Override
+				public void iterationComplete(SearchResult result) {
+					iterations[result.getDepth()] = result.getNodes();
+				}
+			});
+			SearchLimits limits = new SearchLimits();
+			limits.setDepth(depth);
+			SearchResult result = search.search(limits);
+			nodes += result.getNodes();
+			previousNodes += iterations[depth - 1];
+			time += result.getTime();
+			for (SearchFeature feature : SearchFeature.values()) {
+				featureCounts[feature.ordinal()] += search
+						.getFeatureCount(feature);
+			}
+		}
+		StringBuilder line = new StringBuilder(String.format(
+				"%-28s nodes %10d  ebf %5.2f  time %6d ms", name, nodes,
+				(double) nodes / Math.max(previousNodes, 1), time));
+		for (SearchFeature feature : SearchFeature.values()) {
+			line.append("  ").append(feature.getOptionName()).append(' ')
+					.append(featureCounts[feature.ordinal()]);
+		}
+		out.println(line);
+	}
+
+	public static void main(String[] args) {
+		int depth = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+		SearchBenchmark benchmark = new SearchBenchmark(depth);
+		PrintStream out = System.out;
+		boolean[] enabled = new boolean[SearchFeature.values().length];
+		Arrays.fill(enabled, true);
+		benchmark.run("all on", enabled, out);
+		for (SearchFeature feature : SearchFeature.values()) {
+			enabled[feature.ordinal()] = false;
+			benchmark.run("without " + feature.getOptionName(), enabled, out);
+			enabled[feature.ordinal()] = true;
+		}
+		Arrays.fill(enabled, false);
+		benchmark.run("all off", enabled, out);
+	}
+}
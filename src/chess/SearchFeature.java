@@ -0,0 +1,27 @@
+package chess;
+
+public enum SearchFeature {
+	// selective search techniques that can be switched off one by one to
+	// measure what each is worth; Search.getFeatureCount tells how often
+	// each fired
+	NULL_MOVE("NullMove", "null-move cutoffs"), LATE_MOVE_REDUCTIONS(
+			"LateMoveReductions", "reduced moves"), FUTILITY("Futility",
+			"futile moves skipped"), RAZORING("Razoring", "nodes razored"), CHECK_EXTENSIONS(
+			"CheckExtensions", "checks extended");
+
+	private final String optionName;
+	private final String description;
+
+	private SearchFeature(String optionName, String description) {
+		this.optionName = optionName;
+		this.description = description;
+	}
+
+	public String getOptionName() {
+		return optionName;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+}
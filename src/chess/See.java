@@ -0,0 +1,112 @@
+package chess;
+
+class See {
+	// static exchange evaluation: the material a move wins once every
+	// capture on its destination square has been played out, each side
+	// taking with its least valuable attacker and free to stop at any time
+	public static final int[] VALUES = { 100, 320, 330, 500, 900, 20000 };
+	// room for one gain per capture, enough for every piece on the board
+	public static final int MAX_EXCHANGES = 32;
+
+	private See() {
+	}
+
+	public static int evaluate(Board board, int move, int[] gain) {
+		// gain holds at least MAX_EXCHANGES entries and is reused by callers
+		// so that the search does not allocate per capture
+		int type = Move.getType(move);
+		if (type == Move.SHORT_CASTLE || type == Move.LONG_CASTLE) {
+			return 0;
+		}
+		int from = Move.getFrom(move);
+		int to = Move.getTo(move);
+		int us = Board.colorOf(board.getPiece(from));
+		long occupied = board.getOccupied() ^ (1L << from);
+		int onSquare = Move.getPiece(move);
+		// the buffer is reused, so a quiet move must not see the last gain
+		gain[0] = 0;
+		if (type == Move.EN_PASSANT) {
+			occupied ^= 1L << Board.square(Board.file(to), Board.rank(from));
+			gain[0] = VALUES[Board.PAWN];
+		} else if (Move.isCapture(move)) {
+			gain[0] = VALUES[Move.getCaptured(move)];
+		}
+		if (type == Move.PROMOTED) {
+			onSquare = Move.getPromotion(move);
+			gain[0] += VALUES[onSquare] - VALUES[Board.PAWN];
+		}
+		long bishops = board.getPieces(Board.WHITE, Board.BISHOP)
+				| board.getPieces(Board.BLACK, Board.BISHOP)
+				| board.getPieces(Board.WHITE, Board.QUEEN)
+				| board.getPieces(Board.BLACK, Board.QUEEN);
+		long rooks = board.getPieces(Board.WHITE, Board.ROOK)
+				| board.getPieces(Board.BLACK, Board.ROOK)
+				| board.getPieces(Board.WHITE, Board.QUEEN)
+				| board.getPieces(Board.BLACK, Board.QUEEN);
+		long attackers = board.getAttackersTo(to, occupied) & occupied;
+		int side = us ^ 1;
+		int depth = 0;
+		while (true) {
+			long own = attackers & board.getPieces(side);
+			if (own == 0) {
+				break;
+			}
+			int attacker = Board.PAWN;
+			long bits = own & board.getPieces(side, attacker);
+			while (bits == 0) {
+				bits = own & board.getPieces(side, ++attacker);
+			}
+			long bit = bits & -bits;
+			if (attacker == Board.KING
+					&& (attackers & board.getPieces(side ^ 1)) != 0) {
+				// the king may not take into a defended square
+				break;
+			}
+			depth++;
+			gain[depth] = VALUES[onSquare] - gain[depth - 1];
+			occupied ^= bit;
+			attackers = (attackers | (Attacks.bishop(to, occupied) & bishops) | (Attacks
+					.rook(to, occupied) & rooks)) & occupied;
+			onSquare = attacker;
+			side ^= 1;
+		}
+		// each side only continues the exchange while it pays
+		while (depth > 0) {
+			gain[depth - 1] = -Math.max(-gain[depth - 1], gain[depth]);
+			depth--;
+		}
+		return gain[0];
+	}
+
+	public static void main(String[] args) {
+		// known exchanges, evaluated in turn through one buffer
+		String[] positions = { "1k1r4/1pp4p/p7/4p3/8/P5P1/1PP4P/2K1R3 w - - 0 1",
+				"1k1r3q/1ppn3p/p4b2/4p3/8/P2N2P1/1PP1R1BP/2K1Q3 w - - 0 1",
+				"4k3/8/8/3q4/8/8/3R4/4K3 w - - 0 1",
+				"4k3/8/8/3q4/8/8/3R4/4K3 w - - 0 1",
+				"4k3/8/2p5/3p4/8/8/3R4/3RK3 w - - 0 1",
+				"4k3/P7/8/8/8/8/8/4K3 w - - 0 1" };
+		String[] moves = { "e1e5", "d3e5", "d2d5", "d2a2", "d2d5", "a7a8q" };
+		int[] expected = { 100, -220, 900, -500, -300, 800 };
+		int[] gain = new int[MAX_EXCHANGES];
+		int[] list = new int[Board.MAX_MOVES];
+		boolean correct = true;
+		for (int i = 0; i < positions.length; i++) {
+			Board board = Fen.parse(positions[i]);
+			int count = board.generateMoves(list, 0);
+			int value = Integer.MIN_VALUE;
+			for (int j = 0; j < count; j++) {
+				if (Move.toString(list[j]).equals(moves[i])) {
+					value = evaluate(board, list[j], gain);
+				}
+			}
+			boolean ok = value == expected[i];
+			System.out.printf("%-8s %6d %s%n", moves[i], value,
+					ok ? "ok" : "MISMATCH, expected " + expected[i]);
+			correct &= ok;
+		}
+		if (!correct) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package chess;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+
+class SortedRuns implements Closeable {
+	// an external sort of (key, value) pairs: pairs are sorted in memory
+	// a run at a time and written to files next to the target, then read
+	// back through a k-way merge. Memory stays at one run however many
+	// pairs are added, and close() deletes the run files whether or not
+	// the sort got that far
+	private final Path target;
+	private final long[] keys;
+	private final long[] values;
+	private final ArrayList<Path> paths = new ArrayList<Path>();
+	private final PriorityQueue<Run> queue = new PriorityQueue<Run>();
+	private final ArrayList<Run> open = new ArrayList<Run>();
+	private int size;
+	private long total;
+	private boolean merging;
+	private long key;
+	private long value;
+
+	public SortedRuns(Path target, int runSize) {
+		this.target = target;
+		keys = new long[runSize];
+		values = new long[runSize];
+	}
+
+	public void add(long key, long value) throws IOException {
+		if (merging) {
+			throw new IllegalStateException("Runs are already being merged");
+		}
+		keys[size] = key;
+		values[size] = value;
+		size++;
+		total++;
+		if (size == keys.length) {
+			writeRun();
+		}
+	}
+
+	public long size() {
+		return total;
+	}
+
+	public boolean next() throws IOException {
+		// moves to the next pair in (key, value) order
+		if (!merging) {
+			startMerge();
+		}
+		Run run = queue.poll();
+		if (run == null) {
+			return false;
+		}
+		key = run.key;
+		value = run.value;
+		if (run.next()) {
+			queue.add(run);
+		}
+		return true;
+	}
+
+	public long getKey() {
+		return key;
+	}
+
+	public long getValue() {
+		return value;
+	}
+
+	private void startMerge() throws IOException {
+		merging = true;
+		if (size > 0) {
+			writeRun();
+		}
+		for (Path path : paths) {
+			Run run = new Run(path);
+			open.add(run);
+			if (run.next()) {
+				queue.add(run);
+			}
+		}
+	}
+
+	private void writeRun() throws IOException {
+		PositionIndex.sort(keys, values, 0, size - 1);
+		Path run = Paths.get(target.toString() + ".run" + paths.size());
+		// listed before it is written, so a failed write is cleaned up too
+		paths.add(run);
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+			for (int i = 0; i < size; i++) {
+				out.writeLong(keys[i]);
+				out.writeLong(values[i]);
+			}
+		}
+		size = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		IOException failure = null;
+		for (Run run : open) {
+			try {
+				run.close();
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+		for (Path path : paths) {
+			try {
+				Files.deleteIfExists(path);
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+		open.clear();
+		queue.clear();
+		paths.clear();
+		if (failure != null) {
+			throw failure;
+		}
+	}
+}
+
+class Run implements Comparable<Run>, Closeable {
+	// a sorted run file being read back during the merge
+	private final DataInputStream in;
+	long key;
+	long value;
+
+	public Run(Path path) throws IOException {
+		in = new DataInputStream(new BufferedInputStream(
+				Files.newInputStream(path), 1 << 16));
+	}
+
+	public boolean next() throws IOException {
+		try {
+			key = in.readLong();
+			value = in.readLong();
+			return true;
+		} catch (EOFException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public int compareTo(Run other) {
+		int result = Long.compare(key, other.key);
+		return result != 0 ? result : Long.compare(value, other.value);
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,828 @@
+package chess;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class Tablebase {
+	// a table is a 16-byte header and one byte per index, where the index
+	// is the side to move, the pair of kings, then the squares of the
+	// other pieces in signature order, 48 for a pawn and 64 for the rest.
+	// Boards are turned so that the white king is in a1-d1-d4, or on files
+	// a-d when pawns fix the ranks, which leaves 462 or 1806 king pairs.
+	// A byte holds 0 for a draw, 255 for an impossible position, or plies
+	// to mate + 1: odd plies are a win for the side to move, even a loss
+	public static final int MAGIC = 0x43485442; // "CHTB"
+	public static final int VERSION = 2;
+	public static final int UNKNOWN = Integer.MIN_VALUE;
+	// the generator keeps three bytes per position in memory, 727 MB for
+	// five pieces without pawns and 2.1 GB with one
+	public static final int MAX_GENERATED_PIECES = 5;
+	static final int HEADER_SIZE = 16;
+	static final int INVALID = 255;
+	static final String SUFFIX = ".tb";
+	// pieces are listed strongest first on each side of a signature
+	static final int[] ORDER = { Board.KING, Board.QUEEN, Board.ROOK,
+			Board.BISHOP, Board.KNIGHT, Board.PAWN };
+	private static final String PIECE_MARKS = "PNBRQK";
+	// symmetries, applied in this order: mirror the files, mirror the
+	// ranks, swap files and ranks. TIED marks both kings on the a1-h8
+	// diagonal, where the other pieces decide on TRANSPOSE
+	static final int FLIP_FILES = 1;
+	static final int FLIP_RANKS = 2;
+	static final int TRANSPOSE = 4;
+	static final int TIED = 8;
+	static final long DIAGONAL = 0x8040201008040201L;
+	// indexed by whether there are pawns: king squares as white * 64 +
+	// black to their pair's number, -1 if not folded or not legal, and back
+	static final int[][] KING_PAIRS = new int[2][64 * 64];
+	static final int[][] KING_SQUARES = new int[2][];
+	// a probe finds its table by a material key: each side's pieces other
+	// than the king, two bits of count per type, numbered among the ones
+	// that fit in a table, and the keys' signatures are worked out once
+	private static final int[] SIDE_MATERIALS = new int[1 << 10];
+	private static final int SIDE_MATERIAL_COUNT;
+	private static final String[] SIGNATURES;
+	private static final boolean[] FLIPPED;
+	private static final long[] SIZES;
+
+	static {
+		for (int pawns = 0; pawns < 2; pawns++) {
+			int[] squares = new int[64 * 64];
+			int count = 0;
+			for (int white = 0; white < 64; white++) {
+				for (int black = 0; black < 64; black++) {
+					int pair = white * 64 + black;
+					KING_PAIRS[pawns][pair] = -1;
+					if (white != black
+							&& (Attacks.king(white) & (1L << black)) == 0
+							&& (getSymmetry(white, black, 0, pawns == 1) & ~TIED) == 0) {
+						KING_PAIRS[pawns][pair] = count;
+						squares[count++] = pair;
+					}
+				}
+			}
+			KING_SQUARES[pawns] = Arrays.copyOf(squares, count);
+		}
+	}
+
+	static {
+		int count = 0;
+		for (int code = 0; code < SIDE_MATERIALS.length; code++) {
+			SIDE_MATERIALS[code] = getPieceCount(code) <= MAX_GENERATED_PIECES - 2 ? count++
+					: -1;
+		}
+		SIDE_MATERIAL_COUNT = count;
+		SIGNATURES = new String[count * count];
+		FLIPPED = new boolean[count * count];
+		SIZES = new long[count * count];
+		int[][] counts = new int[2][6];
+		for (int white = 0; white < SIDE_MATERIALS.length; white++) {
+			for (int black = 0; black < SIDE_MATERIALS.length; black++) {
+				if (SIDE_MATERIALS[white] < 0
+						|| SIDE_MATERIALS[black] < 0
+						|| getPieceCount(white) + getPieceCount(black) > MAX_GENERATED_PIECES - 2) {
+					continue;
+				}
+				for (int type = Board.PAWN; type < Board.KING; type++) {
+					counts[Board.WHITE][type] = (white >>> (2 * type)) & 3;
+					counts[Board.BLACK][type] = (black >>> (2 * type)) & 3;
+				}
+				counts[Board.WHITE][Board.KING] = 1;
+				counts[Board.BLACK][Board.KING] = 1;
+				int key = SIDE_MATERIALS[white] * count + SIDE_MATERIALS[black];
+				FLIPPED[key] = isFlipped(counts);
+				SIGNATURES[key] = getSignature(counts, FLIPPED[key]);
+				SIZES[key] = getPositionCount(counts);
+			}
+		}
+	}
+
+	private final Path directory;
+	// tables are mapped on first use, and ones not on disk remembered. A
+	// thread that misses another's update to missing only looks again
+	private final AtomicReferenceArray<MappedFile> tables = new AtomicReferenceArray<MappedFile>(
+			SIGNATURES.length);
+	private final boolean[] missing = new boolean[SIGNATURES.length];
+	private final int maxPieces;
+
+	public Tablebase(Path directory) throws IOException {
+		this.directory = directory;
+		int max = 2;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(
+				directory, "*" + SUFFIX)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				max = Math.max(max, name.length() - SUFFIX.length() - 1);
+			}
+		}
+		maxPieces = Math.min(max, MAX_GENERATED_PIECES);
+	}
+
+	public int getMaxPieces() {
+		// positions with more pieces than this are never in a table
+		return maxPieces;
+	}
+
+	public int probe(Model model) {
+		return probe(model.getBoard());
+	}
+
+	public int probe(Board board) {
+		// a score from the side to move's view, Search.MATE - plies for a
+		// win, -(Search.MATE - plies) for a loss, 0 for a draw, or UNKNOWN
+		int pieces = Long.bitCount(board.getOccupied());
+		if (pieces > maxPieces || board.getCastlingRights() != 0
+				|| board.getEnPassantSquare() != Board.NO_SQUARE) {
+			return UNKNOWN;
+		}
+		if (board.isInsufficientMaterial()) {
+			return 0;
+		}
+		int key = getMaterialKey(board);
+		MappedFile table = getTable(key);
+		if (table == null) {
+			return UNKNOWN;
+		}
+		// the stronger side is stored as white, so a black one is mirrored
+		// to move up the board
+		boolean flipped = FLIPPED[key];
+		int white = flipped ? Board.BLACK : Board.WHITE;
+		int pawns = (board.getPieces(Board.WHITE, Board.PAWN) | board
+				.getPieces(Board.BLACK, Board.PAWN)) != 0 ? 1 : 0;
+		int whiteKing = board.getKingSquare(white);
+		int blackKing = board.getKingSquare(white ^ 1);
+		int symmetry = getSymmetry(whiteKing, blackKing, flipped ? FLIP_RANKS
+				: 0, pawns == 1);
+		if ((symmetry & TIED) != 0) {
+			symmetry = breakTie(board, white, symmetry ^ TIED);
+		}
+		long index = white ^ board.getSideToMove();
+		index = index
+				* KING_SQUARES[pawns].length
+				+ KING_PAIRS[pawns][transform(whiteKing, symmetry) * 64
+						+ transform(blackKing, symmetry)];
+		for (int tableColor = Board.WHITE; tableColor <= Board.BLACK; tableColor++) {
+			for (int type : ORDER) {
+				if (type == Board.KING) {
+					continue;
+				}
+				long bits = board.getPieces(white ^ tableColor, type);
+				while (bits != 0) {
+					int square = transform(Long.numberOfTrailingZeros(bits),
+							symmetry);
+					bits &= bits - 1;
+					index = type == Board.PAWN ? index * 48 + square - 8
+							: index * 64 + square;
+				}
+			}
+		}
+		return toScore(table.get(HEADER_SIZE + index) & 0xFF);
+	}
+
+	static int transform(int square, int symmetry) {
+		if ((symmetry & FLIP_FILES) != 0) {
+			square ^= 7;
+		}
+		if ((symmetry & FLIP_RANKS) != 0) {
+			square ^= 56;
+		}
+		if ((symmetry & TRANSPOSE) != 0) {
+			square = (square >>> 3) | ((square & 7) << 3);
+		}
+		return square;
+	}
+
+	static int getSymmetry(int whiteKing, int blackKing, int symmetry,
+			boolean pawns) {
+		// adds to the given symmetry what brings the white king into its
+		// part of the board, and the black king below the diagonal if the
+		// white one is on it
+		if (Board.file(transform(whiteKing, symmetry)) > 3) {
+			symmetry ^= FLIP_FILES;
+		}
+		if (pawns) {
+			return symmetry;
+		}
+		if (Board.rank(transform(whiteKing, symmetry)) > 3) {
+			symmetry ^= FLIP_RANKS;
+		}
+		int king = transform(whiteKing, symmetry);
+		int other = transform(blackKing, symmetry);
+		int kingSide = Board.rank(king) - Board.file(king);
+		int otherSide = Board.rank(other) - Board.file(other);
+		if (kingSide > 0 || (kingSide == 0 && otherSide > 0)) {
+			return symmetry | TRANSPOSE;
+		}
+		return kingSide == 0 && otherSide == 0 ? symmetry | TIED : symmetry;
+	}
+
+	private static int breakTie(Board board, int white, int symmetry) {
+		// with both kings on the diagonal, the first other piece off it in
+		// index order is kept below it
+		for (int tableColor = Board.WHITE; tableColor <= Board.BLACK; tableColor++) {
+			for (int type : ORDER) {
+				if (type == Board.KING) {
+					continue;
+				}
+				long bits = board.getPieces(white ^ tableColor, type);
+				while (bits != 0) {
+					int square = transform(Long.numberOfTrailingZeros(bits),
+							symmetry);
+					bits &= bits - 1;
+					if (Board.rank(square) != Board.file(square)) {
+						return Board.rank(square) > Board.file(square) ? symmetry
+								| TRANSPOSE
+								: symmetry;
+					}
+				}
+			}
+		}
+		return symmetry;
+	}
+
+	static long getPositionCount(int[][] counts) {
+		boolean pawns = counts[Board.WHITE][Board.PAWN]
+				+ counts[Board.BLACK][Board.PAWN] > 0;
+		long positions = 2L * KING_SQUARES[pawns ? 1 : 0].length;
+		for (int color = Board.WHITE; color <= Board.BLACK; color++) {
+			for (int type = Board.PAWN; type < Board.KING; type++) {
+				for (int i = 0; i < counts[color][type]; i++) {
+					positions *= type == Board.PAWN ? 48 : 64;
+				}
+			}
+		}
+		return positions;
+	}
+
+	static int toScore(int value) {
+		if (value == 0) {
+			return 0;
+		} else if (value == INVALID) {
+			return UNKNOWN;
+		}
+		int plies = value - 1;
+		return plies % 2 == 1 ? Search.MATE - plies : plies - Search.MATE;
+	}
+
+	static int getMaterialKey(Board board) {
+		// probe has already made sure no count needs more than two bits
+		return SIDE_MATERIALS[getMaterialCode(board, Board.WHITE)]
+				* SIDE_MATERIAL_COUNT
+				+ SIDE_MATERIALS[getMaterialCode(board, Board.BLACK)];
+	}
+
+	private static int getMaterialCode(Board board, int color) {
+		int code = 0;
+		for (int type = Board.PAWN; type < Board.KING; type++) {
+			code |= Long.bitCount(board.getPieces(color, type)) << (2 * type);
+		}
+		return code;
+	}
+
+	private static int getPieceCount(int code) {
+		int count = 0;
+		for (; code != 0; code >>>= 2) {
+			count += code & 3;
+		}
+		return count;
+	}
+
+	private MappedFile getTable(int key) {
+		MappedFile table = tables.get(key);
+		if (table != null || missing[key]) {
+			return table;
+		}
+		Path path = directory.resolve(SIGNATURES[key] + SUFFIX);
+		try {
+			table = new MappedFile(path, 0);
+			if (table.size() != HEADER_SIZE + SIZES[key]
+					|| table.getInt(0) != MAGIC || table.getInt(4) != VERSION) {
+				table.close();
+				throw new IOException("Not a tablebase: " + path);
+			}
+		} catch (IOException e) {
+			missing[key] = true;
+			return null;
+		}
+		return tables.compareAndSet(key, null, table) ? table : tables
+				.get(key);
+	}
+
+	static boolean isFlipped(int[][] counts) {
+		// the stronger side is always stored as white
+		String white = getSide(counts[Board.WHITE]);
+		String black = getSide(counts[Board.BLACK]);
+		if (white.length() != black.length()) {
+			return black.length() > white.length();
+		}
+		for (int i = 0; i < white.length(); i++) {
+			int whiteRank = getOrder(white.charAt(i));
+			int blackRank = getOrder(black.charAt(i));
+			if (whiteRank != blackRank) {
+				return blackRank < whiteRank;
+			}
+		}
+		return false;
+	}
+
+	static String getSignature(int[][] counts, boolean flipped) {
+		String white = getSide(counts[Board.WHITE]);
+		String black = getSide(counts[Board.BLACK]);
+		return flipped ? black + "v" + white : white + "v" + black;
+	}
+
+	private static String getSide(int[] counts) {
+		StringBuilder side = new StringBuilder();
+		for (int type : ORDER) {
+			for (int i = 0; i < counts[type]; i++) {
+				side.append(PIECE_MARKS.charAt(type));
+			}
+		}
+		return side.toString();
+	}
+
+	private static int getOrder(char mark) {
+		for (int i = 0; i < ORDER.length; i++) {
+			if (PIECE_MARKS.charAt(ORDER[i]) == mark) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	static int[][] parseSignature(String signature) {
+		String[] sides = signature.toUpperCase().split("V");
+		if (sides.length != 2) {
+			throw new IllegalArgumentException("Invalid signature: "
+					+ signature);
+		}
+		int[][] counts = new int[2][6];
+		for (int color = Board.WHITE; color <= Board.BLACK; color++) {
+			for (char mark : sides[color].toCharArray()) {
+				int type = PIECE_MARKS.indexOf(mark);
+				if (type < 0) {
+					throw new IllegalArgumentException("Invalid signature: "
+							+ signature);
+				}
+				counts[color][type]++;
+			}
+			if (counts[color][Board.KING] != 1) {
+				throw new IllegalArgumentException("Invalid signature: "
+						+ signature);
+			}
+		}
+		return counts;
+	}
+
+	static boolean isDrawn(int[][] counts) {
+		// bare kings or a single minor piece can never mate
+		int minors = 0;
+		for (int color = Board.WHITE; color <= Board.BLACK; color++) {
+			if (counts[color][Board.PAWN] + counts[color][Board.ROOK]
+					+ counts[color][Board.QUEEN] > 0) {
+				return false;
+			}
+			minors += counts[color][Board.KNIGHT] + counts[color][Board.BISHOP];
+		}
+		return minors <= 1;
+	}
+
+	public static void main(String[] args) throws IOException {
+		// Tablebase generate <directory> <signature>...
+		// Tablebase probe <directory> <fen>
+		PrintStream out = System.out;
+		if (args.length >= 3 && args[0].equals("generate")) {
+			Path directory = Paths.get(args[1]);
+			Files.createDirectories(directory);
+			for (int i = 2; i < args.length; i++) {
+				TablebaseGenerator.generate(directory, args[i], out);
+			}
+		} else if (args.length == 3 && args[0].equals("probe")) {
+			Tablebase tablebase = new Tablebase(Paths.get(args[1]));
+			int score = tablebase.probe(Fen.parse(args[2]));
+			if (score == UNKNOWN) {
+				out.println("not in the tablebase");
+			} else if (score == 0) {
+				out.println("draw");
+			} else if (score > 0) {
+				out.println("win, mate in " + (Search.MATE - score) + " plies");
+			} else {
+				out.println("loss, mated in " + (Search.MATE + score)
+						+ " plies");
+			}
+		} else {
+			System.err.println("usage: Tablebase generate <directory> <signature>... | Tablebase probe <directory> <fen>");
+			System.exit(2);
+		}
+	}
+}
+
+class TablebaseGenerator {
+	// retrograde analysis: every position starts with a count of its
+	// moves that stay in the table, and positions are resolved one
+	// distance at a time by walking moves backwards from the ones already
+	// known. Captures and promotions leave the table and are probed in
+	// smaller tables, which are generated first. A position with every
+	// piece on the a1-h8 diagonal is its own mirror image, so of two moves
+	// out of it that mirror each other only the one that ends on or below
+	// the diagonal is counted, and of two moves into it only the one that
+	// starts below
+	private static final int BLOCKED = 255;
+	private static final int MAX_PLIES = 252;
+
+	private final int pieces;
+	// the kings come first, then the other pieces in signature order
+	private final int[] types;
+	private final int[] colors;
+	private final int[] sizes;
+	private final int pawns;
+	private final int kingPairs;
+	private final long positions;
+	private final byte[] values;
+	private final byte[] counters;
+	// the best distance reachable by leaving the table, stored like values
+	private final byte[] exits;
+	private final Board board = new Board();
+	private final int[] moves = new int[Board.MAX_MOVES];
+	private final int[] squares;
+	private final Tablebase subtables;
+
+	private TablebaseGenerator(int[][] counts, Tablebase subtables) {
+		int total = 0;
+		for (int color = Board.WHITE; color <= Board.BLACK; color++) {
+			for (int type = Board.PAWN; type <= Board.KING; type++) {
+				total += counts[color][type];
+			}
+		}
+		pieces = total;
+		types = new int[pieces];
+		colors = new int[pieces];
+		sizes = new int[pieces];
+		types[0] = Board.KING;
+		types[1] = Board.KING;
+		colors[1] = Board.BLACK;
+		int slot = 2;
+		for (int color = Board.WHITE; color <= Board.BLACK; color++) {
+			for (int type : Tablebase.ORDER) {
+				for (int i = 0; i < counts[color][type] && type != Board.KING; i++) {
+					types[slot] = type;
+					colors[slot] = color;
+					sizes[slot] = type == Board.PAWN ? 48 : 64;
+					slot++;
+				}
+			}
+		}
+		pawns = counts[Board.WHITE][Board.PAWN]
+				+ counts[Board.BLACK][Board.PAWN] > 0 ? 1 : 0;
+		kingPairs = Tablebase.KING_SQUARES[pawns].length;
+		positions = Tablebase.getPositionCount(counts);
+		values = new byte[(int) positions];
+		counters = new byte[(int) positions];
+		exits = new byte[(int) positions];
+		squares = new int[pieces];
+		this.subtables = subtables;
+	}
+
+	static void generate(Path directory, String name, PrintStream log)
+			throws IOException {
+		int[][] counts = Tablebase.parseSignature(name);
+		boolean flipped = Tablebase.isFlipped(counts);
+		if (flipped) {
+			int[] white = counts[Board.WHITE];
+			counts[Board.WHITE] = counts[Board.BLACK];
+			counts[Board.BLACK] = white;
+		}
+		String signature = Tablebase.getSignature(counts, false);
+		Path path = directory.resolve(signature + Tablebase.SUFFIX);
+		if (Tablebase.isDrawn(counts) || Files.exists(path)) {
+			return;
+		}
+		if (signature.length() - 1 > Tablebase.MAX_GENERATED_PIECES) {
+			throw new IllegalArgumentException("Too many pieces: "
+					+ signature);
+		}
+		if (counts[Board.WHITE][Board.PAWN] > 0
+				&& counts[Board.BLACK][Board.PAWN] > 0) {
+			// en passant would need positions the index cannot express
+			throw new IllegalArgumentException(
+					"Pawns on both sides are not supported: " + signature);
+		}
+		for (String dependency : getDependencies(counts)) {
+			generate(directory, dependency, log);
+		}
+		long start = System.nanoTime();
+		TablebaseGenerator generator = new TablebaseGenerator(counts,
+				new Tablebase(directory));
+		int longest = generator.run();
+		generator.write(path);
+		log.printf("%s: %d positions, longest mate %d plies, %.1f s%n",
+				signature, generator.positions, longest,
+				(System.nanoTime() - start) / 1e9);
+	}
+
+	private static ArrayList<String> getDependencies(int[][] counts) {
+		// every capture and promotion leads to another table
+		ArrayList<String> dependencies = new ArrayList<String>();
+		for (int color = Board.WHITE; color <= Board.BLACK; color++) {
+			for (int type = Board.PAWN; type < Board.KING; type++) {
+				if (counts[color][type] == 0) {
+					continue;
+				}
+				counts[color][type]--;
+				dependencies.add(getSignature(counts));
+				if (type == Board.PAWN) {
+					for (int promotion = Board.KNIGHT; promotion <= Board.QUEEN; promotion++) {
+						counts[color][promotion]++;
+						dependencies.add(getSignature(counts));
+						for (int captured = Board.PAWN; captured < Board.KING; captured++) {
+							if (counts[color ^ 1][captured] > 0) {
+								counts[color ^ 1][captured]--;
+								dependencies.add(getSignature(counts));
+								counts[color ^ 1][captured]++;
+							}
+						}
+						counts[color][promotion]--;
+					}
+				}
+				counts[color][type]++;
+			}
+		}
+		return dependencies;
+	}
+
+	private static String getSignature(int[][] counts) {
+		return Tablebase.getSignature(counts, Tablebase.isFlipped(counts));
+	}
+
+	private int run() {
+		initialize();
+		int maxExit = 0;
+		for (int i = 0; i < positions; i++) {
+			maxExit = Math.max(maxExit, exits[i] & 0xFF);
+		}
+		int longest = 0;
+		for (int level = 0; level <= MAX_PLIES; level++) {
+			// positions whose best way out of the table is this far away
+			boolean found = false;
+			for (int i = 0; i < positions; i++) {
+				if (values[i] == 0 && (exits[i] & 0xFF) == level + 1
+						&& (level % 2 == 1 || counters[i] == 0)) {
+					values[i] = (byte) (level + 1);
+				}
+			}
+			for (int i = 0; i < positions; i++) {
+				if ((values[i] & 0xFF) == level + 1) {
+					found = true;
+					unmove(i, level);
+				}
+			}
+			if (found) {
+				longest = level;
+			} else if (level >= maxExit) {
+				return longest;
+			}
+		}
+		throw new IllegalStateException("Mate too long to store");
+	}
+
+	private void initialize() {
+		int[] placed = new int[pieces];
+		int placedCount = 0;
+		for (int index = 0; index < positions; index++) {
+			int side = decode(index);
+			for (int i = 0; i < placedCount; i++) {
+				board.remove(placed[i]);
+			}
+			placedCount = 0;
+			long occupied = 0;
+			boolean valid = true;
+			for (int i = 0; i < pieces && valid; i++) {
+				long bit = 1L << squares[i];
+				if ((occupied & bit) != 0) {
+					valid = false;
+				}
+				occupied |= bit;
+			}
+			if (!valid || encode(side) != index) {
+				// kings on the diagonal leave some boards stored twice,
+				// the copy the probe does not use stays empty
+				values[index] = (byte) Tablebase.INVALID;
+				continue;
+			}
+			for (int i = 0; i < pieces; i++) {
+				board.put(Board.piece(colors[i], types[i]), squares[i]);
+				placed[placedCount++] = squares[i];
+			}
+			if (board.getSideToMove() != side) {
+				board.setSideToMove(side);
+			}
+			if (board.isAttacked(board.getKingSquare(side ^ 1), side)) {
+				// the side that just moved left its king in check
+				values[index] = (byte) Tablebase.INVALID;
+				continue;
+			}
+			classify(index, isSymmetric(occupied));
+		}
+	}
+
+	private boolean isSymmetric(long occupied) {
+		return pawns == 0 && (occupied & ~Tablebase.DIAGONAL) == 0;
+	}
+
+	private void classify(int index, boolean symmetric) {
+		int count = board.generateMoves(moves, 0);
+		int legal = 0;
+		int inTable = 0;
+		int bestWin = Integer.MAX_VALUE;
+		int worstLoss = -1;
+		boolean canDraw = false;
+		for (int i = 0; i < count; i++) {
+			int move = moves[i];
+			if (!board.isLegal(move)) {
+				continue;
+			}
+			legal++;
+			if (!Move.isCapture(move) && Move.getType(move) != Move.PROMOTED) {
+				int to = Move.getTo(move);
+				if (!symmetric || Board.rank(to) <= Board.file(to)) {
+					inTable++;
+				}
+				continue;
+			}
+			board.makeMove(move);
+			int score = subtables.probe(board);
+			board.unmakeMove();
+			if (score == Tablebase.UNKNOWN) {
+				throw new IllegalStateException("Missing table after "
+						+ Move.toString(move) + " in " + Fen.toFen(board));
+			} else if (score < 0) {
+				bestWin = Math.min(bestWin, Search.MATE + score + 1);
+			} else if (score > 0) {
+				worstLoss = Math.max(worstLoss, Search.MATE - score + 1);
+			} else {
+				canDraw = true;
+			}
+		}
+		if (legal == 0) {
+			if (board.isInCheck()) {
+				values[index] = 1;
+			} else {
+				counters[index] = (byte) BLOCKED;
+			}
+			return;
+		}
+		if (bestWin != Integer.MAX_VALUE) {
+			exits[index] = (byte) (bestWin + 1);
+			counters[index] = (byte) BLOCKED;
+		} else if (canDraw) {
+			counters[index] = (byte) BLOCKED;
+		} else {
+			counters[index] = (byte) inTable;
+			if (worstLoss >= 0) {
+				exits[index] = (byte) (worstLoss + 1);
+			}
+		}
+	}
+
+	private int decode(int index) {
+		// fills in squares and returns the side to move
+		for (int i = pieces - 1; i >= 2; i--) {
+			int square = index % sizes[i];
+			index /= sizes[i];
+			squares[i] = types[i] == Board.PAWN ? square + 8 : square;
+		}
+		int pair = Tablebase.KING_SQUARES[pawns][index % kingPairs];
+		squares[0] = pair >>> 6;
+		squares[1] = pair & 63;
+		return index / kingPairs;
+	}
+
+	private int encode(int side) {
+		// the index of squares as the probe would find it, -1 if the kings
+		// touch
+		int symmetry = Tablebase.getSymmetry(squares[0], squares[1], 0,
+				pawns == 1);
+		if ((symmetry & Tablebase.TIED) != 0) {
+			symmetry ^= Tablebase.TIED;
+			for (int i = 2; i < pieces; i++) {
+				int square = Tablebase.transform(squares[i], symmetry);
+				if (Board.rank(square) != Board.file(square)) {
+					if (Board.rank(square) > Board.file(square)) {
+						symmetry |= Tablebase.TRANSPOSE;
+					}
+					break;
+				}
+			}
+		}
+		int pair = Tablebase.KING_PAIRS[pawns][Tablebase.transform(
+				squares[0], symmetry)
+				* 64 + Tablebase.transform(squares[1], symmetry)];
+		if (pair < 0) {
+			return -1;
+		}
+		int index = side * kingPairs + pair;
+		for (int i = 2; i < pieces; i++) {
+			int square = Tablebase.transform(squares[i], symmetry);
+			index = index * sizes[i]
+					+ (types[i] == Board.PAWN ? square - 8 : square);
+		}
+		return index;
+	}
+
+	private void unmove(int index, int level) {
+		// visits every position one quiet move before this one
+		int mover = decode(index) ^ 1;
+		long occupied = 0;
+		for (int i = 0; i < pieces; i++) {
+			occupied |= 1L << squares[i];
+		}
+		boolean symmetric = isSymmetric(occupied);
+		for (int i = 0; i < pieces; i++) {
+			if (colors[i] != mover) {
+				continue;
+			}
+			int to = squares[i];
+			long from;
+			switch (types[i]) {
+			case Board.PAWN:
+				from = 0;
+				int back = mover == Board.WHITE ? -8 : 8;
+				int start = mover == Board.WHITE ? 3 : 4;
+				int single = to + back;
+				if (Board.rank(single) != 0 && Board.rank(single) != 7
+						&& (occupied & (1L << single)) == 0) {
+					from |= 1L << single;
+					if (Board.rank(to) == start
+							&& (occupied & (1L << (single + back))) == 0) {
+						from |= 1L << (single + back);
+					}
+				}
+				break;
+			case Board.KNIGHT:
+				from = Attacks.knight(to);
+				break;
+			case Board.BISHOP:
+				from = Attacks.bishop(to, occupied);
+				break;
+			case Board.ROOK:
+				from = Attacks.rook(to, occupied);
+				break;
+			case Board.QUEEN:
+				from = Attacks.queen(to, occupied);
+				break;
+			default:
+				from = Attacks.king(to);
+			}
+			from &= ~occupied;
+			while (from != 0) {
+				int square = Long.numberOfTrailingZeros(from);
+				from &= from - 1;
+				if (symmetric && Board.rank(square) > Board.file(square)) {
+					continue;
+				}
+				squares[i] = square;
+				int previous = encode(mover);
+				squares[i] = to;
+				if (previous < 0 || values[previous] != 0) {
+					continue;
+				}
+				if (level % 2 == 0) {
+					// a move into a lost position wins
+					values[previous] = (byte) (level + 2);
+				} else if ((counters[previous] & 0xFF) != BLOCKED
+						&& --counters[previous] == 0) {
+					// every move loses; a longer loss out of the table waits
+					int exit = exits[previous] & 0xFF;
+					if (exit == 0 || exit - 1 <= level + 1) {
+						values[previous] = (byte) (level + 2);
+					}
+				}
+			}
+		}
+	}
+
+	private void write(Path path) throws IOException {
+		// written aside and moved into place, so a table is never partial
+		Path temporary = Paths.get(path.toString() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(temporary),
+						1 << 16))) {
+			out.writeInt(Tablebase.MAGIC);
+			out.writeInt(Tablebase.VERSION);
+			out.writeInt(pieces);
+			out.writeInt(0);
+			out.write(values);
+		}
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+	}
+}
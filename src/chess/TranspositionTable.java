@@ -0,0 +1,109 @@
+package chess;
+
+import java.util.Arrays;
+
+class TranspositionTable {
+	public static final int UPPER_BOUND = 1;
+	public static final int LOWER_BOUND = 2;
+	public static final int EXACT = 3;
+
+	// an entry is two longs, the key xor the data and the data itself, so
+	// a torn write from another thread fails verification instead of
+	// returning a wrong move. The data packs the move (bits 0-23), the
+	// score (24-39), the depth (40-47), the bound (48-49) and the search
+	// generation (50-57). Each bucket holds a depth-preferred entry
+	// followed by an always-replace entry.
+	private static final int BUCKET_LONGS = 4;
+
+	private final long[] table;
+	private final int mask;
+	private int generation;
+
+	public TranspositionTable(int megabytes) {
+		if (megabytes <= 0) {
+			throw new IllegalArgumentException("Invalid table size: "
+					+ megabytes + " MB");
+		}
+		long bytes = megabytes * 1024L * 1024L;
+		long buckets = Long.highestOneBit(bytes / (BUCKET_LONGS * 8));
+		// a Java array holds a little under 2^31 elements
+		buckets = Math.min(buckets,
+				Integer.highestOneBit((Integer.MAX_VALUE - 8) / BUCKET_LONGS));
+		table = new long[(int) buckets * BUCKET_LONGS];
+		mask = (int) buckets - 1;
+	}
+
+	public void clear() {
+		Arrays.fill(table, 0);
+		generation = 0;
+	}
+
+	public void newSearch() {
+		generation = (generation + 1) & 0xFF;
+	}
+
+	public long probe(long key) {
+		// returns the stored data, or 0 if the position is not in the table
+		int index = ((int) key & mask) * BUCKET_LONGS;
+		for (int i = index; i < index + BUCKET_LONGS; i += 2) {
+			long data = table[i + 1];
+			if ((table[i] ^ data) == key && data != 0) {
+				return data;
+			}
+		}
+		return 0;
+	}
+
+	public void store(long key, int move, int score, int depth, int bound) {
+		int index = ((int) key & mask) * BUCKET_LONGS;
+		long old = table[index + 1];
+		boolean sameKey = (table[index] ^ old) == key;
+		if (move == Move.NONE && sameKey) {
+			// keep the best move from an earlier search of this position
+			move = getMove(old);
+		}
+		long data = (move & 0xFFFFFFL) | ((score & 0xFFFFL) << 24)
+				| ((long) (depth & 0xFF) << 40) | ((long) bound << 48)
+				| ((long) generation << 50);
+		if (!sameKey && old != 0 && getGeneration(old) == generation
+				&& getDepth(old) > depth) {
+			// the deeper entry stays, this one goes to the second slot
+			index += 2;
+		}
+		table[index] = key ^ data;
+		table[index + 1] = data;
+	}
+
+	public static int getMove(long data) {
+		return (int) (data & 0xFFFFFF);
+	}
+
+	public static int getScore(long data) {
+		return (short) (data >>> 24);
+	}
+
+	public static int getDepth(long data) {
+		return (int) ((data >>> 40) & 0xFF);
+	}
+
+	public static int getBound(long data) {
+		return (int) ((data >>> 48) & 3);
+	}
+
+	private static int getGeneration(long data) {
+		return (int) ((data >>> 50) & 0xFF);
+	}
+
+	public int getHashfull() {
+		// permille of the first thousand buckets used in this search
+		int used = 0;
+		int buckets = Math.min(1000, mask + 1);
+		for (int i = 0; i < buckets; i++) {
+			long data = table[i * BUCKET_LONGS + 1];
+			if (data != 0 && getGeneration(data) == generation) {
+				used++;
+			}
+		}
+		return used * 1000 / buckets;
+	}
+}
@@ -0,0 +1,384 @@
+package chess;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+public class Uci {
+	private static final int MAX_HASH_SIZE = 1024;
+	private static final int MAX_THREADS = 64;
+	// moves assumed left in the game when the GUI does not say
+	private static final int DEFAULT_MOVES_TO_GO = 30;
+	// milliseconds kept back from the clock for communication
+	private static final long MOVE_OVERHEAD = 50;
+
+	private final BufferedReader in;
+	private final PrintStream out;
+	private Model model = new Model("White", "Black");
+	private int threads = 1;
+	private int hashSize = Search.DEFAULT_HASH_SIZE;
+	private TranspositionTable table = new TranspositionTable(hashSize);
+	private ParallelSearch search;
+	private OpeningBook book;
+	private Tablebase tablebase;
+	private final boolean[] features = new boolean[SearchFeature.values().length];
+	private Thread searchThread;
+	private SearchLimits limits;
+	private long searchStart;
+	// bestmove is held back while the GUI still expects the search to run:
+	// under "go infinite" until stop, under "go ponder" until ponderhit
+	private final Object hold = new Object();
+	private boolean holding;
+	private boolean infinite;
+	// the move time a ponder search gets once the ponder move is played
+	private long ponderTime;
+
+	public Uci(BufferedReader in, PrintStream out) {
+		this.in = in;
+		this.out = out;
+		Arrays.fill(features, true);
+	}
+
+	public void run() throws IOException {
+		String line;
+		while ((line = in.readLine()) != null) {
+			String[] tokens = line.trim().split("\\s+");
+			String command = tokens[0];
+			if (command.equals("uci")) {
+				send("id name Chess");
+				send("id author the Chess authors");
+				send("option name Hash type spin default "
+						+ Search.DEFAULT_HASH_SIZE + " min 1 max "
+						+ MAX_HASH_SIZE);
+				send("option name Threads type spin default 1 min 1 max "
+						+ MAX_THREADS);
+				send("option name BookFile type string default <empty>");
+				send("option name TablebasePath type string default <empty>");
+				send("option name Ponder type check default true");
+				for (SearchFeature feature : SearchFeature.values()) {
+					send("option name " + feature.getOptionName()
+							+ " type check default true");
+				}
+				send("uciok");
+			} else if (command.equals("isready")) {
+				send("readyok");
+			} else if (command.equals("setoption")) {
+				setOption(tokens);
+			} else if (command.equals("ucinewgame")) {
+				stopSearch();
+				table.clear();
+				model = new Model("White", "Black");
+			} else if (command.equals("position")) {
+				stopSearch();
+				setPosition(tokens);
+			} else if (command.equals("go")) {
+				stopSearch();
+				go(tokens);
+			} else if (command.equals("stop")) {
+				stopSearch();
+			} else if (command.equals("ponderhit")) {
+				ponderHit();
+			} else if (command.equals("quit")) {
+				break;
+			} else if (command.equals("d")) {
+				send(model.getFen());
+			}
+		}
+		stopSearch();
+	}
+
+	private void setOption(String[] tokens) {
+		// setoption name <name> value <value>
+		String name = "";
+		String value = "";
+		for (int i = 1; i < tokens.length; i++) {
+			if (tokens[i].equals("name") && i + 1 < tokens.length) {
+				name = tokens[++i];
+			} else if (tokens[i].equals("value") && i + 1 < tokens.length) {
+				// the value runs to the end of the line, paths may hold spaces
+				StringBuilder builder = new StringBuilder();
+				for (i++; i < tokens.length; i++) {
+					builder.append(tokens[i]).append(' ');
+				}
+				value = builder.toString().trim();
+			}
+		}
+		try {
+			if (name.equalsIgnoreCase("Hash")) {
+				stopSearch();
+				hashSize = clamp(Integer.parseInt(value), 1, MAX_HASH_SIZE);
+				table = new TranspositionTable(hashSize);
+			} else if (name.equalsIgnoreCase("Threads")) {
+				threads = clamp(Integer.parseInt(value), 1, MAX_THREADS);
+			} else if (name.equalsIgnoreCase("BookFile")) {
+				if (book != null) {
+					book.close();
+					book = null;
+				}
+				if (!value.isEmpty() && !value.equals("<empty>")) {
+					book = new OpeningBook(Paths.get(value));
+				}
+			} else if (getFeature(name) != null) {
+				features[getFeature(name).ordinal()] = Boolean
+						.parseBoolean(value);
+			} else if (name.equalsIgnoreCase("TablebasePath")) {
+				stopSearch();
+				tablebase = null;
+				if (!value.isEmpty() && !value.equals("<empty>")) {
+					tablebase = new Tablebase(Paths.get(value));
+				}
+			}
+		} catch (NumberFormatException e) {
+			send("info string invalid value " + value);
+		} catch (IOException e) {
+			send("info string " + e.getMessage());
+		}
+	}
+
+	private static SearchFeature getFeature(String name) {
+		for (SearchFeature feature : SearchFeature.values()) {
+			if (feature.getOptionName().equalsIgnoreCase(name)) {
+				return feature;
+			}
+		}
+		return null;
+	}
+
+	private void setPosition(String[] tokens) {
+		// position [startpos | fen <fen>] [moves <move>...]
+		int i = 1;
+		String fen = Fen.START_POSITION;
+		if (i < tokens.length && tokens[i].equals("fen")) {
+			StringBuilder builder = new StringBuilder();
+			for (i++; i < tokens.length && !tokens[i].equals("moves"); i++) {
+				builder.append(tokens[i]).append(' ');
+			}
+			fen = builder.toString().trim();
+		} else if (i < tokens.length && tokens[i].equals("startpos")) {
+			i++;
+		}
+		try {
+			model = new Model("White", "Black", fen);
+		} catch (IllegalArgumentException e) {
+			send("info string " + e.getMessage());
+			return;
+		}
+		if (i < tokens.length && tokens[i].equals("moves")) {
+			for (i++; i < tokens.length; i++) {
+				int move = findMove(tokens[i]);
+				if (move == Move.NONE) {
+					send("info string illegal move " + tokens[i]);
+					return;
+				}
+				model.move(move);
+			}
+		}
+	}
+
+	private int findMove(String text) {
+		int count = model.getLegalMoveCount();
+		for (int i = 0; i < count; i++) {
+			if (Move.toString(model.getLegalMove(i)).equals(text)) {
+				return model.getLegalMove(i);
+			}
+		}
+		return Move.NONE;
+	}
+
+	private void go(String[] tokens) {
+		SearchLimits limits = new SearchLimits();
+		long time = 0;
+		long increment = 0;
+		int movesToGo = DEFAULT_MOVES_TO_GO;
+		boolean infinite = false;
+		boolean ponder = false;
+		String ourTime = model.isPlayerTurn() ? "wtime" : "btime";
+		String ourIncrement = model.isPlayerTurn() ? "winc" : "binc";
+		try {
+			for (int i = 1; i < tokens.length; i++) {
+				String name = tokens[i];
+				if (name.equals("infinite")) {
+					infinite = true;
+				} else if (name.equals("ponder")) {
+					ponder = true;
+				} else if (i + 1 == tokens.length) {
+					// every other parameter takes a value
+					break;
+				} else if (name.equals("depth")) {
+					limits.setDepth(Integer.parseInt(tokens[++i]));
+				} else if (name.equals("movetime")) {
+					limits.setMoveTime(Long.parseLong(tokens[++i]));
+				} else if (name.equals("nodes")) {
+					limits.setNodes(Long.parseLong(tokens[++i]));
+				} else if (name.equals(ourTime)) {
+					time = Long.parseLong(tokens[++i]);
+				} else if (name.equals(ourIncrement)) {
+					increment = Long.parseLong(tokens[++i]);
+				} else if (name.equals("movestogo")) {
+					movesToGo = Math.max(Integer.parseInt(tokens[++i]), 1);
+				}
+			}
+		} catch (NumberFormatException e) {
+			send("info string invalid go command");
+			return;
+		}
+		if (book != null && !infinite && !ponder) {
+			// known openings are played straight from the book
+			int move = book.probe(model);
+			if (move != Move.NONE) {
+				send("info string book move");
+				send("bestmove " + Move.toString(move));
+				return;
+			}
+		}
+		long moveTime = limits.getMoveTime();
+		if (time > 0 && moveTime == 0) {
+			// an even share of the clock, never more than is left on it
+			long budget = time / movesToGo + increment * 3 / 4;
+			moveTime = Math.max(Math.min(budget, time - MOVE_OVERHEAD), 1);
+		}
+		// a ponder search runs untimed until ponderhit starts its clock
+		limits.setMoveTime(infinite || ponder ? 0 : moveTime);
+		this.limits = limits;
+		this.infinite = infinite;
+		ponderTime = ponder ? moveTime : 0;
+		synchronized (hold) {
+			holding = infinite || ponder;
+		}
+
+		search = new ParallelSearch(model.getBoard(), threads, table);
+		search.setTablebase(tablebase);
+		for (SearchFeature feature : SearchFeature.values()) {
+			search.setEnabled(feature, features[feature.ordinal()]);
+		}
+		final TranspositionTable currentTable = table;
+		search.setListener(new SearchListener() {
+			@Override
+			public void iterationComplete(SearchResult result) {
+				send(toInfo(result, currentTable.getHashfull()));
+			}
+		});
+		final ParallelSearch current = search;
+		final SearchLimits currentLimits = limits;
+		final int fallback = model.getLegalMoveCount() > 0 ? model
+				.getLegalMove(0) : Move.NONE;
+		searchThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				SearchResult result = current.search(currentLimits);
+				// how often each selective technique fired, over all threads
+				StringBuilder counts = new StringBuilder("info string");
+				for (SearchFeature feature : SearchFeature.values()) {
+					counts.append(' ').append(feature.getDescription())
+							.append(' ').append(current.getFeatureCount(feature));
+				}
+				send(counts.toString());
+				waitForRelease();
+				int[] line = result.getPrincipalVariation();
+				int best = line.length > 0 ? line[0] : fallback;
+				String bestMove = best == Move.NONE ? "0000" : Move
+						.toString(best);
+				if (line.length > 1) {
+					bestMove += " ponder " + Move.toString(line[1]);
+				}
+				send("bestmove " + bestMove);
+			}
+		}, "uci-search");
+		searchStart = System.nanoTime();
+		searchThread.start();
+	}
+
+	private void ponderHit() {
+		// the opponent played the expected move, so the search carries on
+		// as a normal one with the clock counted from now
+		if (searchThread == null) {
+			return;
+		}
+		if (ponderTime > 0) {
+			long elapsed = (System.nanoTime() - searchStart) / 1000000;
+			limits.setMoveTime(elapsed + ponderTime);
+			ponderTime = 0;
+		}
+		if (!infinite) {
+			release();
+		}
+	}
+
+	private void waitForRelease() {
+		synchronized (hold) {
+			while (holding) {
+				try {
+					hold.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	private void release() {
+		synchronized (hold) {
+			holding = false;
+			hold.notifyAll();
+		}
+	}
+
+	private void stopSearch() {
+		if (searchThread == null) {
+			return;
+		}
+		release();
+		search.stop();
+		try {
+			searchThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		searchThread = null;
+		search = null;
+		limits = null;
+	}
+
+	static String toInfo(SearchResult result, int hashfull) {
+		// hashfull is in permille of the transposition table
+		int score = result.getScore();
+		String value;
+		if (score >= Search.MATE_BOUND) {
+			value = "mate " + (Search.MATE - score + 1) / 2;
+		} else if (score <= -Search.MATE_BOUND) {
+			value = "mate " + -(Search.MATE + score) / 2;
+		} else {
+			value = "cp " + score;
+		}
+		StringBuilder info = new StringBuilder("info depth ")
+				.append(result.getDepth()).append(" score ").append(value)
+				.append(" nodes ").append(result.getNodes()).append(" nps ")
+				.append(result.getNodesPerSecond()).append(" hashfull ")
+				.append(hashfull).append(" time ")
+				.append(result.getTime()).append(" pv");
+		for (int move : result.getPrincipalVariation()) {
+			info.append(' ').append(Move.toString(move));
+		}
+		return info.toString();
+	}
+
+	private void send(String line) {
+		synchronized (out) {
+			out.println(line);
+			out.flush();
+		}
+	}
+
+	private static int clamp(int value, int min, int max) {
+		return Math.max(min, Math.min(value, max));
+	}
+
+	public static void main(String[] args) throws IOException {
+		new Uci(new BufferedReader(new InputStreamReader(System.in)),
+				System.out).run();
+	}
+}
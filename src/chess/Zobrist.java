@@ -0,0 +1,60 @@
+package chess;
+
+class Zobrist {
+	private static final long[][] PIECES = new long[12][64];
+	private static final long[] CASTLING = new long[16];
+	private static final long[] EN_PASSANT = new long[8];
+	private static final long SIDE;
+
+	static {
+		// fixed seed, so keys are stable between runs and can be stored
+		long seed = 0x2545F4914F6CDD1DL;
+		for (int piece = 0; piece < 12; piece++) {
+			for (int square = 0; square < 64; square++) {
+				seed = next(seed);
+				PIECES[piece][square] = scramble(seed);
+			}
+		}
+		// no castling rights hashes to zero, like an empty board
+		for (int i = 1; i < 16; i++) {
+			seed = next(seed);
+			CASTLING[i] = scramble(seed);
+		}
+		for (int i = 0; i < 8; i++) {
+			seed = next(seed);
+			EN_PASSANT[i] = scramble(seed);
+		}
+		seed = next(seed);
+		SIDE = scramble(seed);
+	}
+
+	private Zobrist() {
+	}
+
+	public static long piece(int piece, int square) {
+		return PIECES[piece][square];
+	}
+
+	public static long castling(int rights) {
+		return CASTLING[rights];
+	}
+
+	public static long enPassant(int square) {
+		return EN_PASSANT[Board.file(square)];
+	}
+
+	public static long side() {
+		return SIDE;
+	}
+
+	private static long next(long seed) {
+		seed ^= seed >>> 12;
+		seed ^= seed << 25;
+		seed ^= seed >>> 27;
+		return seed;
+	}
+
+	private static long scramble(long seed) {
+		return seed * 2685821657736338717L;
+	}
+}